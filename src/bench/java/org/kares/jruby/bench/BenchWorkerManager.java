@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.jruby.Ruby;
+import org.kares.jruby.WorkerManager;
+import org.kares.jruby.WorkerScript;
+
+/**
+ * A (quiet) manager with in-memory parameters and scripts, workers check out
+ * (pre-booted) runtimes from a small pool (handed out in turns, a runtime
+ * might be shared by several workers) - no JRuby-Rack involved.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class BenchWorkerManager extends WorkerManager {
+
+    private final Ruby[] runtimes;
+    private final Map<Ruby, Integer> runtimeIndex = new IdentityHashMap<Ruby, Integer>();
+    private final AtomicIntegerArray checkedOut;
+    private final AtomicInteger nextRuntime = new AtomicInteger();
+    private final Map<String, String> parameters = new HashMap<String, String>();
+    private final Map<String, byte[]> files = new HashMap<String, byte[]>();
+
+    /**
+     * A manager without runtimes (for loading scripts only).
+     */
+    public BenchWorkerManager() {
+        this(new Ruby[0]);
+    }
+
+    public BenchWorkerManager(final Ruby runtime) {
+        this(new Ruby[] { runtime });
+    }
+
+    public BenchWorkerManager(final Ruby[] runtimes) {
+        this.runtimes = runtimes.clone();
+        for ( int i = 0; i < runtimes.length; i++ ) runtimeIndex.put(runtimes[i], i);
+        this.checkedOut = new AtomicIntegerArray(runtimes.length);
+        setJmx(false);
+    }
+
+    public BenchWorkerManager setParameter(final String key, final String value) {
+        parameters.put(key, value); return this;
+    }
+
+    public BenchWorkerManager setFile(final String path, final byte[] content) {
+        files.put(path, content); return this;
+    }
+
+    public WorkerScript workerScript(final String workerId) {
+        return getWorkerScript(workerId);
+    }
+
+    @Override
+    protected Ruby getRuntime() {
+        if ( runtimes.length == 0 ) throw new UnsupportedOperationException("no runtimes");
+        final int index = ( nextRuntime.getAndIncrement() & Integer.MAX_VALUE ) % runtimes.length;
+        checkedOut.incrementAndGet(index);
+        return runtimes[index];
+    }
+
+    @Override
+    protected void releaseRuntime(final Ruby runtime) {
+        final Integer index = runtimeIndex.get(runtime);
+        if ( index == null ) {
+            throw new IllegalStateException("released runtime not from pool: " + runtime);
+        }
+        if ( checkedOut.decrementAndGet(index) < 0 ) {
+            throw new IllegalStateException("runtime released more times than checked out: " + runtime);
+        }
+    }
+
+    /**
+     * @return the number of runtime check-outs not (yet) released
+     */
+    public int getCheckedOutCount() {
+        int count = 0;
+        for ( int i = 0; i < checkedOut.length(); i++ ) count += checkedOut.get(i);
+        return count;
+    }
+
+    @Override
+    public String getParameter(final String key) {
+        return parameters.get(key);
+    }
+
+    @Override
+    protected InputStream openPath(final String path) {
+        final byte[] content = files.get(path);
+        return content == null ? null : new ByteArrayInputStream(content);
+    }
+
+    @Override
+    protected long getLastModified(final String path) {
+        return 0; // unknown - content is re-read (and hashed) on every load
+    }
+
+    @Override
+    protected void log(final String message) { /* quiet */ }
+
+    @Override
+    protected void log(final String message, final Exception e) { /* quiet */ }
+
+}
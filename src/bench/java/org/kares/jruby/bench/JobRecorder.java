@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records (job) latencies as jobs complete (called from Ruby).
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class JobRecorder {
+
+    private final long[] latencies; // nanos
+    private final AtomicInteger completed = new AtomicInteger(0);
+    private final CountDownLatch done;
+
+    public JobRecorder(final int jobs) {
+        this.latencies = new long[jobs];
+        this.done = new CountDownLatch(jobs);
+    }
+
+    /**
+     * @param startTime {@link System#nanoTime()} when the job got reserved
+     */
+    public void completed(final long startTime) {
+        final int index = completed.getAndIncrement();
+        if ( index < latencies.length ) latencies[index] = System.nanoTime() - startTime;
+        done.countDown();
+    }
+
+    public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public int getCompleted() {
+        return Math.min(completed.get(), latencies.length);
+    }
+
+    /**
+     * @param percentile e.g. 99
+     * @return latency (in milliseconds) for the given percentile
+     */
+    public double getLatency(final double percentile) {
+        final int count = getCompleted();
+        if ( count == 0 ) return 0;
+        final long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[ Math.max(0, Math.min(index, count - 1)) ] / 1e6;
+    }
+
+}
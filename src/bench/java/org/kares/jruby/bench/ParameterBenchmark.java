@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+
+import org.jruby.Ruby;
+import org.kares.jruby.ServletWorkerManager;
+import org.kares.jruby.WorkerManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parameter resolution through {@link ServletWorkerManager} - context init
+ * parameters with a fall-back to system properties.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterBenchmark {
+
+    private final ServletWorkerManager manager = new ServletWorkerManager(servletContext()) {
+
+        @Override
+        protected Ruby getRuntime() {
+            throw new UnsupportedOperationException();
+        }
+
+    };
+
+    @Benchmark
+    public String contextParameter() {
+        return manager.getParameter(WorkerManager.THREAD_COUNT_KEY);
+    }
+
+    @Benchmark
+    public String systemPropertyFallback() {
+        return manager.getParameter(WorkerManager.SHUTDOWN_TIMEOUT_KEY);
+    }
+
+    @Benchmark
+    public String missingParameter() {
+        return manager.getParameter("jruby.worker.missing");
+    }
+
+    private static ServletContext servletContext() {
+        System.setProperty(WorkerManager.SHUTDOWN_TIMEOUT_KEY, "5000");
+        final Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(WorkerManager.THREAD_COUNT_KEY, "4");
+        parameters.put(WorkerManager.WORKER_KEY, "resque");
+        return (ServletContext) Proxy.newProxyInstance(ParameterBenchmark.class.getClassLoader(),
+            new Class<?>[] { ServletContext.class }, new InvocationHandler() {
+
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    if ( "getInitParameter".equals(method.getName()) ) return parameters.get(args[0]);
+                    if ( "getServletContextName".equals(method.getName()) ) return "bench";
+                    return null;
+                }
+
+            });
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.jruby.Ruby;
+import org.jruby.RubyInstanceConfig;
+import org.jruby.javasupport.JavaEmbedUtils;
+import org.kares.jruby.WorkerManager;
+
+/**
+ * End-to-end job throughput of the shipped worker adapters (delayed_job,
+ * resque and navvy) across thread counts.
+ *
+ * Workers run the adapters' start scripts on a single runtime against an
+ * in-memory backend stand-in (see <code>src/bench/ruby</code>), all jobs are
+ * enqueued before the workers start and the round ends once they complete.
+ * Reports jobs/sec, p50/p99 latency (from a job's reservation till it's done)
+ * and process CPU use (relative to all available processors).
+ *
+ * Arguments (all optional) are <code>key=value</code> pairs :
+ * <ul>
+ *   <li>adapters - e.g. <code>delayed,resque,navvy</code></li>
+ *   <li>kinds - <code>cpu</code> and/or <code>io</code> (bound) jobs</li>
+ *   <li>threads - thread counts e.g. <code>1,2,4,8,16,32,64</code></li>
+ *   <li>jobs - number of jobs per round</li>
+ *   <li>out - the (JSON) file to write results to</li>
+ *   <li>ruby - the directory with the backend stand-ins</li>
+ * </ul>
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class ThroughputBenchmark {
+
+    static final long ROUND_TIMEOUT = 10 * 60; // seconds
+
+    static class Result {
+
+        final String adapter; final String kind; final int threads;
+        final int jobs; final double seconds;
+        final double p50, p99; final double cpu;
+
+        Result(String adapter, String kind, int threads, int jobs, double seconds,
+            double p50, double p99, double cpu) {
+            this.adapter = adapter; this.kind = kind; this.threads = threads;
+            this.jobs = jobs; this.seconds = seconds;
+            this.p50 = p50; this.p99 = p99; this.cpu = cpu;
+        }
+
+        double getJobsPerSecond() {
+            return seconds == 0 ? 0 : jobs / seconds;
+        }
+
+        String toJSON() {
+            return String.format(Locale.ENGLISH,
+                "{\"adapter\":\"%s\",\"kind\":\"%s\",\"threads\":%d,\"jobs\":%d,\"seconds\":%.3f," +
+                "\"jobsPerSecond\":%.1f,\"p50\":%.3f,\"p99\":%.3f,\"cpu\":%.1f}",
+                adapter, kind, threads, jobs, seconds, getJobsPerSecond(), p50, p99, cpu);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%-8s %-4s %7d %9.1f %9.3f %9.3f %6.1f%%",
+                adapter, kind, threads, getJobsPerSecond(), p50, p99, cpu);
+        }
+
+    }
+
+    private final Ruby runtime;
+    private final int jobs;
+
+    ThroughputBenchmark(final String rubyDir, final int jobs) {
+        final RubyInstanceConfig config = new RubyInstanceConfig();
+        config.setLoadPaths(Arrays.asList(new File(rubyDir).getAbsolutePath()));
+        this.runtime = Ruby.newInstance(config);
+        this.jobs = jobs;
+    }
+
+    Result run(final String adapter, final String kind, final int threads, final int jobs)
+        throws InterruptedException {
+        runtime.evalScriptlet("require 'bench/" + ("delayed".equals(adapter) ? "delayed_job" : adapter) + "'");
+        runtime.evalScriptlet("Navvy::Worker.sleep_time = 0.01 if defined?(Navvy::Worker)");
+
+        final JobRecorder recorder = new JobRecorder(jobs);
+        runtime.getGlobalVariables().set("$bench_recorder", JavaEmbedUtils.javaToRuby(runtime, recorder));
+        runtime.evalScriptlet("Bench.reset; Bench.enqueue(" + jobs + ", :" + kind + ")");
+
+        final BenchWorkerManager manager = new BenchWorkerManager(runtime)
+            .setParameter(WorkerManager.WORKER_KEY, adapter)
+            .setParameter(WorkerManager.THREAD_COUNT_KEY, Integer.toString(threads))
+            .setParameter("INTERVAL", "0.01") // resque
+            .setParameter("SLEEP_DELAY", "0.01"); // delayed_job
+
+        final long cpuStart = getProcessCpuTime();
+        final long start = System.nanoTime();
+        final long elapsed, cpu;
+        manager.startup();
+        try {
+            if ( ! recorder.await(ROUND_TIMEOUT, TimeUnit.SECONDS) ) {
+                System.err.println("round timed out: " + adapter + " " + kind + " x" + threads +
+                    " (" + recorder.getCompleted() + " of " + jobs + " jobs completed)");
+            }
+            elapsed = System.nanoTime() - start;
+            cpu = getProcessCpuTime() - cpuStart;
+        }
+        finally {
+            manager.shutdown();
+            runtime.getGlobalVariables().clear("$bench_recorder");
+        }
+
+        final double cpuUse = cpuStart < 0 ? -1 :
+            100.0 * cpu / elapsed / Runtime.getRuntime().availableProcessors();
+        return new Result(adapter, kind, threads, recorder.getCompleted(), elapsed / 1e9,
+            recorder.getLatency(50), recorder.getLatency(99), cpuUse);
+    }
+
+    List<Result> run(final List<String> adapters, final List<String> kinds, final List<Integer> threads)
+        throws InterruptedException {
+        final List<Result> results = new ArrayList<Result>();
+        System.out.println("adapter  kind threads  jobs/sec   p50(ms)   p99(ms)    cpu");
+        for ( final String adapter : adapters ) {
+            for ( final String kind : kinds ) {
+                run(adapter, kind, threads.get(threads.size() - 1), Math.max(1, jobs / 10)); // warm-up
+                for ( final int count : threads ) {
+                    final Result result = run(adapter, kind, count, jobs);
+                    System.out.println(result);
+                    results.add(result);
+                }
+            }
+        }
+        return results;
+    }
+
+    void tearDown() {
+        runtime.tearDown(false);
+    }
+
+    static void writeJSON(final List<Result> results, final File file) throws IOException {
+        if ( file.getParentFile() != null ) file.getParentFile().mkdirs();
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("[\n");
+            for ( int i = 0; i < results.size(); i++ ) {
+                out.write("  "); out.write(results.get(i).toJSON());
+                out.write(i < results.size() - 1 ? ",\n" : "\n");
+            }
+            out.write("]\n");
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return CPU time used by this (JVM) process in nanoseconds or -1
+     */
+    static long getProcessCpuTime() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if ( os instanceof com.sun.management.OperatingSystemMXBean ) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static String arg(final String[] args, final String key, final String defaultValue) {
+        for ( final String arg : args ) {
+            if ( arg.startsWith(key + '=') ) return arg.substring(key.length() + 1);
+        }
+        return defaultValue;
+    }
+
+    private static List<String> split(final String value) {
+        final List<String> values = new ArrayList<String>();
+        for ( final String val : value.split(",") ) {
+            if ( val.trim().length() > 0 ) values.add(val.trim());
+        }
+        return values;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final List<String> adapters = split(arg(args, "adapters", "delayed,resque,navvy"));
+        final List<String> kinds = split(arg(args, "kinds", "cpu,io"));
+        final List<Integer> threads = new ArrayList<Integer>();
+        for ( final String count : split(arg(args, "threads", "1,2,4,8,16,32,64")) ) {
+            threads.add( Integer.parseInt(count) );
+        }
+        final int jobs = Integer.parseInt(arg(args, "jobs", "2000"));
+
+        final ThroughputBenchmark benchmark = new ThroughputBenchmark(arg(args, "ruby", "src/bench/ruby"), jobs);
+        try {
+            final List<Result> results = benchmark.run(adapters, kinds, threads);
+            final String out = arg(args, "out", null);
+            if ( out != null ) {
+                writeJSON(results, new File(out));
+                System.out.println("results written to " + out);
+            }
+        }
+        finally {
+            benchmark.tearDown();
+        }
+    }
+
+}
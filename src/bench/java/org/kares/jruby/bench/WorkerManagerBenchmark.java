@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jruby.Ruby;
+import org.kares.jruby.WorkerManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link WorkerManager#startup()} followed by a {@link WorkerManager#shutdown()}
+ * with N workers (checking out pre-booted runtimes from a pool of M) running a
+ * trivial script.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkerManagerBenchmark {
+
+    @Param({ "1", "4", "16" })
+    public int workers;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    @Param({ "1", "4" })
+    public int runtimes;
+
+    private Ruby[] runtimePool;
+
+    @Setup(Level.Trial)
+    public void bootRuntimes() {
+        runtimePool = new Ruby[runtimes];
+        for ( int i = 0; i < runtimes; i++ ) runtimePool[i] = Ruby.newInstance();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownRuntimes() {
+        for ( final Ruby runtime : runtimePool ) runtime.tearDown(false);
+    }
+
+    @Benchmark
+    public WorkerManager startupAndShutdown() {
+        final BenchWorkerManager manager = new BenchWorkerManager(runtimePool)
+            .setParameter(WorkerManager.SCRIPT_KEY, "nil")
+            .setParameter(WorkerManager.THREAD_COUNT_KEY, Integer.toString(workers))
+            .setParameter(WorkerManager.STARTUP_PARALLEL_KEY, Boolean.toString(parallel));
+        manager.startup();
+        manager.shutdown();
+        if ( manager.getCheckedOutCount() != 0 ) {
+            throw new IllegalStateException(manager.getCheckedOutCount() + " runtime(s) not released");
+        }
+        return manager;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby.bench;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.kares.jruby.WorkerManager;
+import org.kares.jruby.WorkerScript;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading a worker script from {@link WorkerManager#SCRIPT_PATH_KEY} with and
+ * without a <code>coding:</code> pragma - a fresh manager decodes the script
+ * while a re-used one only re-reads (and hashes) it.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkerScriptBenchmark {
+
+    private static final String PATH = "/worker.rb";
+
+    @Param({ "false", "true" })
+    public boolean pragma;
+
+    private byte[] content;
+    private BenchWorkerManager manager;
+
+    @Setup
+    public void prepareScript() throws UnsupportedEncodingException {
+        final StringBuilder script = new StringBuilder();
+        if ( pragma ) script.append("# -*- coding: ISO-8859-1 -*-\n");
+        for ( int i = 0; i < 200; i++ ) {
+            script.append("puts \"processing job ").append(i).append(" (caf\u00e9)\"\n");
+        }
+        content = script.toString().getBytes(pragma ? "ISO-8859-1" : "UTF-8");
+        manager = newManager();
+    }
+
+    private BenchWorkerManager newManager() {
+        return new BenchWorkerManager()
+            .setParameter(WorkerManager.SCRIPT_PATH_KEY, PATH)
+            .setFile(PATH, content);
+    }
+
+    @Benchmark
+    public WorkerScript loadFresh() {
+        return newManager().workerScript(null);
+    }
+
+    @Benchmark
+    public WorkerScript loadCached() {
+        return manager.workerScript(null);
+    }
+
+}
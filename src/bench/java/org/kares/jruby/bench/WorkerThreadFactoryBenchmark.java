@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kares.jruby.WorkerThreadFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link WorkerThreadFactory} under contention (a factory shared by threads).
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class WorkerThreadFactoryBenchmark {
+
+    private static final Runnable NOOP = new Runnable() {
+        @Override public void run() { /* never started */ }
+    };
+
+    static class ThreadFactory extends WorkerThreadFactory {
+
+        ThreadFactory(final int[] priorities) {
+            super("bench", priorities);
+        }
+
+        int nextPriority() {
+            return nextThreadPriority();
+        }
+
+    }
+
+    private final ThreadFactory factory = new ThreadFactory(new int[] { 4, 5, 6 });
+
+    @Benchmark
+    public Thread newThread() {
+        return factory.newThread(NOOP);
+    }
+
+    @Benchmark
+    public int nextThreadPriority() {
+        return factory.nextPriority();
+    }
+
+}
@@ -0,0 +1,119 @@
+require 'bench/throughput'
+require 'socket'
+
+# A Delayed::Job stand-in (a DB backend emulated by Bench::QUEUE), only what
+# the Delayed::JRubyWorker adapter relies on.
+module Delayed
+
+  module Lifecycle; end # DJ >= 3.0
+
+  class Job
+
+    def self.reserve(worker, max_run_time = nil)
+      item = Bench::QUEUE.pop
+      item ? new(item, worker.name) : nil
+    end
+
+    def self.clear_locks!(worker_name); end
+
+    attr_reader :locked_by
+
+    def initialize(item, locked_by)
+      @item = item; @locked_by = locked_by
+    end
+
+    def id; @item.object_id; end
+
+    def priority; 0; end
+
+    def invoke_job
+      Bench.perform(@item)
+    end
+
+    def unlock
+      @locked_by = nil
+    end
+
+    def save; true; end
+
+    def destroy
+      @locked_by = nil
+    end
+
+  end
+
+  class Worker
+
+    class << self
+      attr_accessor :sleep_delay, :max_run_time, :backend
+      attr_writer :logger
+      def logger; @logger ||= Bench.logger; end
+    end
+    self.sleep_delay = 5
+    self.max_run_time = 4 * 60 * 60
+
+    def initialize(options = {})
+      @quiet = options[:quiet]
+      self.class.sleep_delay = options[:sleep_delay] if options.key?(:sleep_delay)
+    end
+
+    def name
+      @name ||= "host:#{Socket.gethostname} pid:#{Process.pid}"
+    end
+    attr_writer :name
+
+    def start
+      trap('TERM'); trap('INT')
+      say "Starting job worker"
+      loop do
+        count = work_off.inject(0) { |sum, n| sum + n }
+        break if stop?
+        sleep(self.class.sleep_delay) if count.zero?
+        break if stop?
+      end
+    end
+
+    def stop?; !!@exit; end
+
+    def stop; @exit = true; end
+
+    def work_off(num = 100)
+      success, failure = 0, 0
+      num.times do
+        break if stop?
+        case reserve_and_run_one_job
+        when true then success += 1
+        when false then failure += 1
+        else break # no work
+        end
+      end
+      [ success, failure ]
+    end
+
+    def run(job)
+      job.invoke_job
+      job.destroy
+      true
+    rescue => e
+      say "#{job.inspect} failed with #{e.class.name}: #{e.message}"
+      false
+    end
+
+    def say(text)
+      self.class.logger.info(text) unless @quiet
+    end
+
+    protected
+
+    def trap(name); end
+
+    private
+
+    def reserve_and_run_one_job
+      job = Delayed::Job.reserve(self)
+      job ? run(job) : nil
+    end
+
+  end
+
+end
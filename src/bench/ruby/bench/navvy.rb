@@ -0,0 +1,59 @@
+require 'bench/throughput'
+
+# A Navvy stand-in (a DB backend emulated by Bench::QUEUE), only what the
+# Navvy::JRubyWorker adapter relies on.
+module Navvy
+
+  class << self
+    attr_writer :logger
+    def logger; @logger ||= Bench.logger; end
+  end
+
+  class Job
+
+    LIMIT = 100 # Navvy.configuration.job_limit
+
+    def self.limit; LIMIT; end
+
+    def self.next(limit = LIMIT)
+      Bench::QUEUE.pop_batch(limit).map { |item| new(item) }
+    end
+
+    def self.cleanup; end
+
+    attr_reader :exception
+
+    def initialize(item)
+      @item = item
+    end
+
+    def id; @item.object_id; end
+
+    def object; Bench; end
+
+    def method_name; :perform; end
+
+    def args; [ @item[:kind] ]; end
+
+    def run
+      Bench.perform(@item)
+    rescue => e
+      @exception = e
+      nil
+    end
+
+    def failed?; !!@exception; end
+
+  end
+
+  class Worker
+
+    @@sleep_time = 5
+
+    def self.sleep_time; @@sleep_time; end
+
+    def self.sleep_time=(time); @@sleep_time = time; end
+
+  end
+
+end
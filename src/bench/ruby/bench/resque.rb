@@ -0,0 +1,98 @@
+require 'bench/throughput'
+require 'socket'
+
+# A Resque (1.x) stand-in (Redis emulated by Bench::QUEUE), only what the
+# Resque::JRubyWorker adapter relies on.
+module Resque
+
+  Version = VERSION = '1.x-bench'
+
+  class NoQueueError < RuntimeError; end
+
+  def self.logger
+    Bench.logger
+  end
+
+  def self.size(queue)
+    Bench::QUEUE.size
+  end
+
+  class Job
+
+    attr_reader :queue, :payload
+    attr_accessor :worker
+
+    def initialize(queue, payload)
+      @queue = queue; @payload = payload
+    end
+
+    def perform
+      Bench.perform(@payload)
+      true
+    end
+
+    def fail(exception)
+      Bench.logger.warn("job failed: #{exception}")
+    end
+
+  end
+
+  class Worker
+
+    attr_reader :queues
+
+    def initialize(*queues)
+      @queues = queues.map { |queue| queue.to_s.strip }
+      raise NoQueueError if @queues.empty?
+    end
+
+    def reserve
+      @queues.each do |queue|
+        if item = Bench::QUEUE.pop
+          return Job.new(queue, item)
+        end
+      end
+      nil
+    end
+
+    def startup
+      register_worker
+    end
+
+    def shutdown; @shutdown = true; end
+
+    def shutdown?; !!@shutdown; end
+
+    def paused?; !!@paused; end
+
+    def perform(job)
+      begin
+        job.perform
+      rescue Object => e
+        job.fail(e)
+      else
+        yield job if block_given?
+      end
+    end
+
+    def working_on(job); end
+
+    def done_working; end
+
+    def run_hook(name, *args); end
+
+    def register_worker; end
+
+    def unregister_worker(exception = nil); end
+
+    def pid
+      @pid ||= Process.pid
+    end
+
+    def hostname
+      @hostname ||= Socket.gethostname
+    end
+
+  end
+
+end
@@ -0,0 +1,77 @@
+require 'java'
+require 'thread'
+require 'logger'
+
+# In-memory (job) queue shared by the backend stand-ins, jobs are enqueued
+# up-front and recorded (on the Java side) as they complete.
+module Bench
+
+  # A queue with reservation semantics - an item is "locked" on pop (the way a
+  # DB backed queue does `UPDATE ... SET locked_by` or Redis does an LPOP).
+  class Queue
+
+    def initialize
+      @items = []; @lock = Mutex.new
+    end
+
+    def push(item)
+      @lock.synchronize { @items.push(item) }
+      self
+    end
+
+    def pop
+      item = @lock.synchronize { @items.shift }
+      item[:reserved_at] = java.lang.System.nanoTime if item
+      item
+    end
+
+    def pop_batch(limit)
+      items = @lock.synchronize { @items.shift(limit) }
+      now = java.lang.System.nanoTime
+      items.each { |item| item[:reserved_at] = now }
+      items
+    end
+
+    def size
+      @lock.synchronize { @items.size }
+    end
+
+    def clear
+      @lock.synchronize { @items.clear }
+    end
+
+  end
+
+  QUEUE = Queue.new
+
+  def self.logger
+    @logger ||= Logger.new(nil)
+  end
+
+  def self.enqueue(count, kind)
+    count.times { QUEUE.push(:kind => kind.to_sym) }
+  end
+
+  def self.reset
+    QUEUE.clear
+  end
+
+  CPU_ITERATIONS = Integer(java.lang.System.getProperty('bench.cpu.iterations', '20000'))
+  IO_SLEEP = Float(java.lang.System.getProperty('bench.io.millis', '5')) / 1000
+
+  # The (synthetic) job body.
+  def self.perform(item)
+    case item[:kind]
+    when :cpu
+      sum = 0; i = 0
+      while i < CPU_ITERATIONS
+        sum += i * i % 7; i += 1
+      end
+    when :io
+      sleep(IO_SLEEP) # e.g. an HTTP call or a (remote) DB query
+    end
+  ensure
+    $bench_recorder.completed(item[:reserved_at]) if $bench_recorder
+  end
+
+end
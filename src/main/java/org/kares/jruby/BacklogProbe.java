@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+/**
+ * Reports the number of jobs waiting to be processed by a worker (script).
+ *
+ * Implemented by (Ruby) worker adapters e.g. as a block :
+ * <code>$worker_manager.setBacklogProbe { Resque.size('mails') }</code>
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public interface BacklogProbe {
+
+    /**
+     * @return the backlog size (jobs ready to be processed)
+     */
+    long getBacklog() ;
+
+}
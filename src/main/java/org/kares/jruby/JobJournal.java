@@ -0,0 +1,607 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A durable job queue for the built-in <code>journal</code> worker - an
+ * append-only journal of memory-mapped segment files.
+ *
+ * Enqueues and acks are appended as (checksummed) records, an enqueue returns
+ * once it's record is forced to disk - concurrent enqueues share a single
+ * force (group commit). Reservations are kept in memory, jobs not acked are
+ * replayed on {@link #open()}. Segments are deleted (oldest first) once all
+ * their jobs got acked.
+ *
+ * Record layout: <code>[length:int][crc:int][type:byte][id:long][payload]</code>
+ * where length covers type, id and payload (a zero length marks the end).
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class JobJournal {
+
+    static final byte ENQUEUE = 1;
+    static final byte ACK = 2;
+
+    private static final int RECORD_HEADER = 4 + 4; // length, crc
+    private static final int RECORD_PREFIX = 1 + 8; // type, id
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    /**
+     * A reserved job.
+     */
+    public static final class Entry {
+
+        private final long id;
+        private final byte[] payload;
+
+        Entry(final long id, final byte[] payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+    }
+
+    private static final class Segment {
+
+        final long index;
+        final File file;
+        final RandomAccessFile raf;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        int position; // next write
+        int live; // jobs not acked
+
+        Segment(final long index, final File file, final int size) throws IOException {
+            this.index = index;
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            if ( raf.length() < size ) raf.setLength(size);
+            this.capacity = (int) Math.min(Integer.MAX_VALUE, raf.length());
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        void close() {
+            try { raf.close(); } catch (IOException e) { /* ignore */ }
+        }
+
+    }
+
+    private static final class Location {
+
+        final Segment segment;
+        final int offset; // payload
+        final int length;
+
+        Location(final Segment segment, final int offset, final int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+    }
+
+    private final File directory;
+    private final int segmentSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final LinkedList<Segment> segments = new LinkedList<Segment>(); // oldest first
+    private final LinkedHashMap<Long, Location> pending = new LinkedHashMap<Long, Location>();
+    private final Map<Long, Location> reserved = new HashMap<Long, Location>();
+    private final Set<Segment> dirty = new HashSet<Segment>();
+    private Segment active;
+    private long nextId = 1;
+    private long writeSeq; // appended records
+    private long wakeups;
+    private boolean opened, closed;
+
+    // group commit :
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncDone = syncLock.newCondition();
+    private long syncedSeq; // guarded by syncLock
+    private boolean syncing; // guarded by syncLock
+
+    private final AtomicLong syncCount = new AtomicLong(0);
+    private final AtomicLong compactedCount = new AtomicLong(0);
+
+    /**
+     * @param directory where to keep the segment files
+     * @param segmentSize the (maximum) size of a segment file in bytes
+     */
+    public JobJournal(final File directory, final int segmentSize) {
+        if ( segmentSize < 1024 ) {
+            throw new IllegalArgumentException("segment size: " + segmentSize + " < 1024");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the journal, replaying all jobs not acked.
+     * @return the number of (pending) jobs replayed
+     * @throws IOException
+     */
+    public int open() throws IOException {
+        lock.lock();
+        try {
+            if ( opened ) throw new IllegalStateException("already opened");
+            if ( ! directory.isDirectory() && ! directory.mkdirs() ) {
+                throw new IOException("could not create directory: " + directory);
+            }
+            for ( final File file : listSegmentFiles() ) {
+                final String name = file.getName();
+                final long index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                final Segment segment = new Segment(index, file, 0);
+                segments.add(segment);
+                replay(segment);
+            }
+            if ( segments.isEmpty() ) active = newSegment(1);
+            else active = segments.getLast();
+            opened = true;
+            compact();
+            return pending.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private File[] listSegmentFiles() {
+        final File[] files = directory.listFiles();
+        if ( files == null ) return new File[0];
+        final List<File> segmentFiles = new ArrayList<File>(files.length);
+        for ( final File file : files ) {
+            final String name = file.getName();
+            if ( name.endsWith(SEGMENT_SUFFIX) && name.length() > SEGMENT_SUFFIX.length() &&
+                 name.substring(0, name.length() - SEGMENT_SUFFIX.length()).matches("\\d+") ) {
+                segmentFiles.add(file);
+            }
+        }
+        final File[] sorted = segmentFiles.toArray(new File[segmentFiles.size()]);
+        Arrays.sort(sorted); // zero-padded names
+        return sorted;
+    }
+
+    private void replay(final Segment segment) {
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while ( position + RECORD_HEADER + RECORD_PREFIX <= segment.capacity ) {
+            final int length = buffer.getInt(position);
+            if ( length < RECORD_PREFIX || position + RECORD_HEADER + length > segment.capacity ) break;
+            final int crc = buffer.getInt(position + 4);
+            if ( crc != checksum(buffer, position + RECORD_HEADER, length) ) break; // torn write
+            final byte type = buffer.get(position + RECORD_HEADER);
+            final long id = buffer.getLong(position + RECORD_HEADER + 1);
+            if ( type == ENQUEUE ) {
+                final int offset = position + RECORD_HEADER + RECORD_PREFIX;
+                pending.put(id, new Location(segment, offset, length - RECORD_PREFIX));
+                segment.live++;
+            }
+            else if ( type == ACK ) {
+                final Location location = pending.remove(id);
+                if ( location != null ) location.segment.live--;
+            }
+            if ( id >= nextId ) nextId = id + 1;
+            position += RECORD_HEADER + length;
+        }
+        segment.position = position;
+    }
+
+    /**
+     * Appends a job, returns once it's (durably) written.
+     * @param payload the (serialized) job
+     * @return the job id
+     * @throws IOException
+     */
+    public long enqueue(final byte[] payload) throws IOException {
+        final long id; final long seq;
+        lock.lock();
+        try {
+            checkOpen();
+            id = nextId++;
+            final Location location = append(ENQUEUE, id, payload);
+            location.segment.live++;
+            pending.put(id, location);
+            seq = writeSeq;
+            notEmpty.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+        try {
+            awaitSync(seq);
+        }
+        catch (final IOException e) {
+            // the caller is likely to retry - do not leave the job behind :
+            if ( discard(id) ) throw e;
+            // NOTE: already taken by a worker, reporting a failure would only
+            // have it enqueued (and performed) twice
+        }
+        return id;
+    }
+
+    /**
+     * Tombstones a job (that failed to sync) unless it's been polled already.
+     * @param id
+     * @return true if the job got discarded
+     */
+    private boolean discard(final long id) {
+        lock.lock();
+        try {
+            final Location location = pending.remove(id);
+            if ( location == null ) return false;
+            location.segment.live--;
+            if ( ! closed ) {
+                try {
+                    append(ACK, id, null); // in case the enqueue record makes it to disk
+                }
+                catch (final IOException e) { /* not replayed unless synced */ }
+            }
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves the next job, waiting up to the given timeout for one.
+     * @param timeout (in milliseconds)
+     * @return a job or null on timeout, a {@link #wakeAll()} or an interrupt
+     */
+    public Entry poll(final long timeout) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            final long wakeups = this.wakeups;
+            while ( pending.isEmpty() ) {
+                if ( closed || remaining <= 0 || wakeups != this.wakeups ) return null;
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            final Iterator<Map.Entry<Long, Location>> it = pending.entrySet().iterator();
+            final Map.Entry<Long, Location> next = it.next(); it.remove();
+            final Location location = next.getValue();
+            reserved.put(next.getKey(), location);
+
+            final byte[] payload = new byte[location.length];
+            final ByteBuffer buffer = location.segment.buffer.duplicate();
+            buffer.position(location.offset);
+            buffer.get(payload);
+            return new Entry(next.getKey(), payload);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acknowledges a (reserved) job has been processed, the ack is not forced
+     * to disk right away (a job might be replayed if not synced).
+     * @param id
+     * @return false if no such job is pending (or the journal got closed)
+     * @throws IOException
+     */
+    public boolean ack(final long id) throws IOException {
+        lock.lock();
+        try {
+            if ( closed ) return false; // replayed once re-opened
+            checkOpen();
+            Location location = reserved.remove(id);
+            if ( location == null ) location = pending.remove(id);
+            if ( location == null ) return false;
+            append(ACK, id, null);
+            location.segment.live--;
+            compact();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a reserved (not processed) job back to the queue.
+     * @param id
+     * @return false if no such job is reserved
+     */
+    public boolean release(final long id) {
+        lock.lock();
+        try {
+            final Location location = reserved.remove(id);
+            if ( location == null ) return false;
+            pending.put(id, location);
+            notEmpty.signal();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up all workers waiting (polling) for jobs.
+     */
+    public void wakeAll() {
+        lock.lock();
+        try {
+            wakeups++;
+            notEmpty.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces all appended records to disk.
+     * @throws IOException
+     */
+    public void sync() throws IOException {
+        final long seq;
+        lock.lock();
+        try {
+            seq = writeSeq;
+        }
+        finally {
+            lock.unlock();
+        }
+        awaitSync(seq);
+    }
+
+    /**
+     * Syncs and closes the journal, jobs not acked are replayed once re-opened.
+     */
+    public void close() {
+        final List<Segment> segments;
+        lock.lock();
+        try {
+            if ( closed ) return;
+            closed = true;
+            notEmpty.signalAll();
+            segments = new ArrayList<Segment>(this.segments);
+        }
+        finally {
+            lock.unlock();
+        }
+        syncLock.lock();
+        try {
+            while ( syncing ) syncDone.awaitUninterruptibly();
+            for ( final Segment segment : segments ) {
+                segment.buffer.force(); segment.close();
+            }
+        }
+        finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if ( ! opened ) throw new IllegalStateException("journal not opened");
+        if ( closed ) throw new IllegalStateException("journal closed");
+    }
+
+    // holding lock
+    private Location append(final byte type, final long id, final byte[] payload) throws IOException {
+        final int payloadLength = payload == null ? 0 : payload.length;
+        final int length = RECORD_PREFIX + payloadLength;
+        final int recordLength = RECORD_HEADER + length;
+        if ( recordLength > segmentSize ) {
+            throw new IllegalArgumentException("job too large (" + payloadLength + " bytes) for segment size: " + segmentSize);
+        }
+        if ( active.position + recordLength > active.capacity ) active = newSegment(active.index + 1);
+
+        final Segment segment = active;
+        final int position = segment.position;
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(position + RECORD_HEADER);
+        buffer.put(type).putLong(id);
+        if ( payload != null ) buffer.put(payload);
+        buffer.putInt(position + 4, checksum(buffer, position + RECORD_HEADER, length));
+        buffer.putInt(position, length); // last - marks the record as written
+        segment.position = position + recordLength;
+
+        dirty.add(segment);
+        writeSeq++;
+        return new Location(segment, position + RECORD_HEADER + RECORD_PREFIX, payloadLength);
+    }
+
+    private Segment newSegment(final long index) throws IOException {
+        final File file = new File(directory, String.format("%020d", index) + SEGMENT_SUFFIX);
+        final Segment segment = new Segment(index, file, segmentSize);
+        segments.add(segment);
+        return segment;
+    }
+
+    // holding lock - deletes (oldest) segments with all jobs acked
+    private void compact() {
+        while ( segments.size() > 1 ) {
+            final Segment oldest = segments.getFirst();
+            if ( oldest == active || oldest.live > 0 ) break;
+            segments.removeFirst(); dirty.remove(oldest);
+            oldest.close();
+            if ( oldest.file.delete() ) compactedCount.incrementAndGet();
+        }
+    }
+
+    private void awaitSync(final long seq) throws IOException {
+        syncLock.lock();
+        try {
+            while ( syncedSeq < seq ) {
+                if ( syncing ) { // someone else is forcing - might include our record
+                    syncDone.awaitUninterruptibly(); continue;
+                }
+                syncing = true;
+                final long target; final List<Segment> forcing;
+                lock.lock();
+                try {
+                    target = writeSeq;
+                    forcing = new ArrayList<Segment>(dirty);
+                    dirty.clear();
+                }
+                finally {
+                    lock.unlock();
+                }
+                boolean forced = false;
+                syncLock.unlock();
+                try {
+                    for ( final Segment segment : forcing ) force(segment.buffer);
+                    forced = true;
+                }
+                finally {
+                    if ( ! forced ) redirty(forcing); // the next sync retries
+                    syncLock.lock();
+                    syncing = false;
+                    if ( forced ) {
+                        if ( target > syncedSeq ) syncedSeq = target;
+                        syncCount.incrementAndGet();
+                    }
+                    syncDone.signalAll();
+                }
+            }
+        }
+        catch (final RuntimeException e) { // UncheckedIOException on Java 8+
+            throw new IOException("failed to sync journal: " + directory, e);
+        }
+        finally {
+            syncLock.unlock();
+        }
+    }
+
+    void force(final MappedByteBuffer buffer) {
+        buffer.force();
+    }
+
+    private void redirty(final List<Segment> forcing) {
+        lock.lock();
+        try {
+            for ( final Segment segment : forcing ) {
+                if ( segments.contains(segment) ) dirty.add(segment); // not compacted meanwhile
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private static int checksum(final ByteBuffer buffer, final int offset, final int length) {
+        final CRC32 crc = new CRC32();
+        final byte[] bytes = new byte[length];
+        final ByteBuffer dup = buffer.duplicate();
+        dup.position(offset);
+        dup.get(bytes);
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @return the number of pending (not reserved) jobs
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of reserved (not yet acked) jobs
+     */
+    public int getReservedSize() {
+        lock.lock();
+        try {
+            return reserved.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how many times records were forced to disk
+     */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * @return the number of (fully acked) segments deleted
+     */
+    public long getCompactedCount() {
+        return compactedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "[" + directory + ", size=" + size() +
+            ", reserved=" + getReservedSize() + ", segments=" + getSegmentCount() + "]";
+    }
+
+}
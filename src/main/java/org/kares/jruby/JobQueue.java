@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jruby.runtime.builtin.IRubyObject;
+
+/**
+ * A bounded (in-memory) job queue for the built-in <code>inmemory</code> worker.
+ *
+ * Jobs (any objects) are taken by priority (lower first) and in the order they
+ * were enqueued, delayed jobs become available once their delay elapses.
+ * Once the capacity is reached {@link #offer(Object, long, int)} applies the
+ * {@link Overflow} policy.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class JobQueue {
+
+    /**
+     * What to do when enqueueing into a full queue.
+     */
+    public enum Overflow {
+        /** wait (up to the offer timeout) for space, reject on timeout */
+        BLOCK,
+        /** reject the job right away */
+        REJECT,
+        /** reject the job so that the caller runs it (in it's own thread) */
+        CALLER_RUNS;
+
+        static Overflow parse(final String overflow) {
+            if ( overflow == null ) return null;
+            try {
+                return valueOf( overflow.trim().toUpperCase().replace('-', '_') );
+            }
+            catch (final IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    static final class Job {
+
+        final Object payload;
+        final int priority;
+        final long seq;
+        final long time; // nanos (when due)
+
+        Job(final Object payload, final int priority, final long seq, final long time) {
+            this.payload = payload;
+            this.priority = priority;
+            this.seq = seq;
+            this.time = time;
+        }
+
+    }
+
+    private static final Comparator<Job> BY_PRIORITY = new Comparator<Job>() {
+
+        @Override
+        public int compare(final Job job1, final Job job2) {
+            if ( job1.priority != job2.priority ) return job1.priority < job2.priority ? -1 : 1;
+            return job1.seq < job2.seq ? -1 : ( job1.seq == job2.seq ? 0 : 1 );
+        }
+
+    };
+
+    private static final Comparator<Job> BY_TIME = new Comparator<Job>() {
+
+        @Override
+        public int compare(final Job job1, final Job job2) {
+            final long diff = job1.time - job2.time;
+            if ( diff != 0 ) return diff < 0 ? -1 : 1;
+            return BY_PRIORITY.compare(job1, job2);
+        }
+
+    };
+
+    private final String name;
+    private final int capacity;
+    private final Overflow overflow;
+    private final long offerTimeout; // millis
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final PriorityQueue<Job> ready = new PriorityQueue<Job>(16, BY_PRIORITY);
+    private final PriorityQueue<Job> scheduled = new PriorityQueue<Job>(16, BY_TIME);
+    private long seq; // guarded by lock
+    private long wakeups; // guarded by lock
+
+    private final AtomicLong enqueuedCount = new AtomicLong(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    /**
+     * @param name
+     * @param capacity max number of (ready and delayed) jobs
+     * @param overflow what to do once full
+     * @param offerTimeout how long to wait for space (in milliseconds) with {@link Overflow#BLOCK}
+     */
+    public JobQueue(final String name, final int capacity, final Overflow overflow, final long offerTimeout) {
+        if ( capacity < 1 ) {
+            throw new IllegalArgumentException("capacity: " + capacity + " < 1");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.overflow = overflow == null ? Overflow.BLOCK : overflow;
+        this.offerTimeout = Math.max(0, offerTimeout);
+    }
+
+    /**
+     * Enqueues a job.
+     * @param job
+     * @param delay run no sooner than the given delay (in milliseconds)
+     * @param priority jobs with a lower value run first
+     * @return false if the job got rejected (the queue is full)
+     */
+    public boolean offer(final Object job, final long delay, final int priority) {
+        if ( job == null ) throw new NullPointerException("null job");
+        final long now = System.nanoTime();
+        lock.lock();
+        try {
+            if ( size() >= capacity ) {
+                if ( overflow != Overflow.BLOCK || ! awaitNotFull() ) {
+                    rejectedCount.incrementAndGet();
+                    return false;
+                }
+            }
+            if ( delay > 0 ) {
+                final Job scheduledJob = new Job(job, priority, seq++, now + TimeUnit.MILLISECONDS.toNanos(delay));
+                scheduled.offer(scheduledJob);
+                // a (new) earliest job needs to wake up a waiting worker :
+                if ( scheduled.peek() == scheduledJob ) notEmpty.signal();
+            }
+            else {
+                ready.offer(new Job(job, priority, seq++, now));
+                notEmpty.signal();
+            }
+            enqueuedCount.incrementAndGet();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean awaitNotFull() { // holding lock
+        long remaining = TimeUnit.MILLISECONDS.toNanos(offerTimeout);
+        try {
+            while ( size() >= capacity ) {
+                if ( remaining <= 0 ) return false;
+                remaining = notFull.awaitNanos(remaining);
+            }
+            return true;
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Takes the next (due) job, waiting up to the given timeout for one.
+     * @param timeout (in milliseconds)
+     * @return a job or null on timeout, a {@link #wakeAll()} or an interrupt
+     */
+    public Object poll(final long timeout) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            final long wakeups = this.wakeups;
+            while ( true ) {
+                final long now = System.nanoTime();
+                Job due;
+                while ( ( due = scheduled.peek() ) != null && due.time - now <= 0 ) {
+                    ready.offer( scheduled.poll() );
+                }
+                final Job job = ready.poll();
+                if ( job != null ) {
+                    notFull.signal();
+                    if ( ! ready.isEmpty() ) notEmpty.signal(); // e.g. promoted
+                    if ( job.payload instanceof IRubyObject ) checkRuntime((IRubyObject) job.payload);
+                    return job.payload;
+                }
+                if ( remaining <= 0 || wakeups != this.wakeups ) return null;
+                final long wait = due == null ? remaining : Math.min(remaining, due.time - now);
+                final long waited = wait - notEmpty.awaitNanos(wait);
+                remaining -= waited;
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A (Ruby) job is only safe to perform on the runtime it was created on.
+     * @param job
+     * @throws IllegalStateException if polled by a worker on another runtime
+     */
+    private static void checkRuntime(final IRubyObject job) {
+        final RubyWorker worker = RubyWorker.current();
+        if ( worker != null && worker.runtime != job.getRuntime() ) {
+            throw new IllegalStateException("discarded job (" + job.getMetaClass().getName() + ")" +
+                " enqueued from another runtime than the worker's: " + worker);
+        }
+    }
+
+    /**
+     * Wakes up all workers waiting (polling) for jobs.
+     */
+    public void wakeAll() {
+        lock.lock();
+        try {
+            wakeups++;
+            notEmpty.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all jobs.
+     * @return the number of (pending) jobs removed
+     */
+    public int clear() {
+        lock.lock();
+        try {
+            final int size = size();
+            ready.clear(); scheduled.clear();
+            notFull.signalAll();
+            return size;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * @return whether a rejected job should be run by the caller
+     */
+    public boolean isCallerRuns() {
+        return overflow == Overflow.CALLER_RUNS;
+    }
+
+    /**
+     * @return the number of (ready and delayed) jobs
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return ready.size() + scheduled.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of delayed jobs (not yet due or not yet taken)
+     */
+    public int getScheduledSize() {
+        lock.lock();
+        try {
+            return scheduled.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "[" + name + ", size=" + size() + ", capacity=" + capacity +
+            ", overflow=" + overflow + "]";
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * (Atomic) job reservations for (Ruby) worker adapters polling a shared store
+ * that does not lock jobs (e.g. Navvy) - guarantees two worker threads of the
+ * application never pick up the same job.
+ *
+ * There's a single instance per application (class-loader), a reservation is
+ * bound to the thread that made it (reservations of dead threads are taken
+ * over). Completed jobs can not be reserved for a while, as other threads
+ * might still hold them in a (stale) batch fetched before completion.
+ *
+ * @see WorkerManager#getJobReservations()
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class JobReservations {
+
+    private static final JobReservations INSTANCE = new JobReservations(60 * 1000);
+
+    public static JobReservations getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentMap<String, Thread> reservations = new ConcurrentHashMap<String, Thread>(32);
+    private final ConcurrentMap<String, Long> completed = new ConcurrentHashMap<String, Long>(64); // key -> time
+    private final AtomicInteger completions = new AtomicInteger(0);
+    private final long retention; // millis
+
+    /**
+     * @param retention how long (in milliseconds) completed jobs stay reserved
+     */
+    JobReservations(final long retention) { // getInstance()
+        this.retention = retention;
+    }
+
+    /**
+     * Reserves a job (key) for the current thread.
+     * @param key a job key e.g. "navvy:42"
+     * @return true if reserved, false if reserved by another (live) thread
+     */
+    public boolean reserve(final String key) {
+        final Thread current = Thread.currentThread();
+        final Thread holder = reservations.putIfAbsent(key, current);
+        if ( holder != null && holder != current ) {
+            if ( holder.isAlive() || ! reservations.replace(key, holder, current) ) return false;
+        }
+        final Long completedTime = completed.get(key);
+        if ( completedTime != null && System.currentTimeMillis() - completedTime < retention ) {
+            reservations.remove(key, current); return false; // already done
+        }
+        return true;
+    }
+
+    /**
+     * Releases a job (key) reserved by the current thread without running it.
+     * @param key
+     * @return whether the job was reserved (by the current thread)
+     */
+    public boolean release(final String key) {
+        return reservations.remove(key, Thread.currentThread());
+    }
+
+    /**
+     * Releases a job (key) reserved by the current thread once it's been run.
+     * @param key
+     * @return whether the job was reserved (by the current thread)
+     */
+    public boolean complete(final String key) {
+        final long now = System.currentTimeMillis();
+        completed.put(key, now); // before releasing
+        if ( completions.incrementAndGet() % 1024 == 0 ) purgeCompleted(now);
+        return reservations.remove(key, Thread.currentThread());
+    }
+
+    private void purgeCompleted(final long now) {
+        final Iterator<Map.Entry<String, Long>> it = completed.entrySet().iterator();
+        while ( it.hasNext() ) {
+            if ( now - it.next().getValue() >= retention ) it.remove();
+        }
+    }
+
+    public boolean isReserved(final String key) {
+        return reservations.containsKey(key);
+    }
+
+    public int size() {
+        return reservations.size();
+    }
+
+}
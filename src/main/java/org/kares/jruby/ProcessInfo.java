@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Host identity and (OS) process liveness for (Ruby) worker adapters, e.g.
+ * when pruning dead Resque workers - without forking a <code>ps</code>.
+ *
+ * Liveness uses <code>java.lang.ProcessHandle</code> (Java 9+) looked up
+ * reflectively, results are cached for a short time (pruning checks the same
+ * PIDs repeatedly). On older JVMs {@link #isAlive(long)} returns null.
+ *
+ * @see WorkerManager#getProcessInfo()
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class ProcessInfo {
+
+    private static final ProcessInfo INSTANCE = new ProcessInfo(5000);
+
+    public static ProcessInfo getInstance() {
+        return INSTANCE;
+    }
+
+    private static final Method PROCESS_HANDLE_OF; // ProcessHandle.of(long)
+    private static final Method PROCESS_HANDLE_IS_ALIVE; // ProcessHandle#isAlive()
+    private static final Method PROCESS_HANDLE_CURRENT; // ProcessHandle.current()
+    private static final Method PROCESS_HANDLE_PID; // ProcessHandle#pid()
+    private static final Method OPTIONAL_OR_ELSE; // Optional#orElse(Object)
+
+    static {
+        Method of = null, isAlive = null, current = null, pid = null, orElse = null;
+        try {
+            final Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+            of = processHandle.getMethod("of", long.class);
+            isAlive = processHandle.getMethod("isAlive");
+            current = processHandle.getMethod("current");
+            pid = processHandle.getMethod("pid");
+            orElse = Class.forName("java.util.Optional").getMethod("orElse", Object.class);
+        }
+        catch (final Exception e) { // ClassNotFoundException on Java < 9
+            of = null;
+        }
+        PROCESS_HANDLE_OF = of;
+        PROCESS_HANDLE_IS_ALIVE = isAlive;
+        PROCESS_HANDLE_CURRENT = current;
+        PROCESS_HANDLE_PID = pid;
+        OPTIONAL_OR_ELSE = orElse;
+    }
+
+    private final long ttl; // millis
+    private final ConcurrentMap<Long, long[]> liveness = new ConcurrentHashMap<Long, long[]>(); // [ expires, alive ]
+
+    private volatile String hostName;
+    private volatile long pid;
+
+    /**
+     * @param ttl how long (in milliseconds) to cache whether a process is alive
+     */
+    ProcessInfo(final long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return whether process liveness can be checked (Java 9+)
+     */
+    public static boolean isSupported() {
+        return PROCESS_HANDLE_OF != null;
+    }
+
+    /**
+     * @return the local host name (resolved once)
+     */
+    public String getHostName() {
+        String hostName = this.hostName;
+        if ( hostName == null ) {
+            try {
+                hostName = InetAddress.getLocalHost().getHostName();
+            }
+            catch (final UnknownHostException e) {
+                hostName = "localhost";
+            }
+            this.hostName = hostName;
+        }
+        return hostName;
+    }
+
+    /**
+     * @return the PID of this (JVM) process or -1 if not known
+     */
+    public long getPid() {
+        long pid = this.pid;
+        if ( pid == 0 ) this.pid = pid = resolvePid();
+        return pid;
+    }
+
+    private static long resolvePid() {
+        if ( PROCESS_HANDLE_CURRENT != null ) {
+            try {
+                return (Long) PROCESS_HANDLE_PID.invoke( PROCESS_HANDLE_CURRENT.invoke(null) );
+            }
+            catch (final Exception e) { /* fall-back */ }
+        }
+        final String name = ManagementFactory.getRuntimeMXBean().getName(); // "pid@hostname"
+        try {
+            return Long.parseLong( name.substring(0, name.indexOf('@')) );
+        }
+        catch (final RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param pid
+     * @return whether a process with the given PID is running or null if it
+     * can not be determined (older JVM or not permitted)
+     */
+    public Boolean isAlive(final long pid) {
+        if ( PROCESS_HANDLE_OF == null ) return null;
+        final long now = System.currentTimeMillis();
+        final long[] cached = liveness.get(pid);
+        if ( cached != null && cached[0] > now ) return cached[1] == 1;
+
+        final boolean alive;
+        try {
+            final Object handle = OPTIONAL_OR_ELSE.invoke( PROCESS_HANDLE_OF.invoke(null, pid), (Object) null );
+            alive = handle != null && (Boolean) PROCESS_HANDLE_IS_ALIVE.invoke(handle);
+        }
+        catch (final Exception e) { // e.g. a SecurityException
+            return null;
+        }
+        if ( liveness.size() > 1024 ) purgeExpired(now);
+        liveness.put(pid, new long[] { now + ttl, alive ? 1 : 0 });
+        return alive;
+    }
+
+    private void purgeExpired(final long now) {
+        for ( final Long pid : liveness.keySet() ) {
+            final long[] cached = liveness.get(pid);
+            if ( cached != null && cached[0] <= now ) liveness.remove(pid, cached);
+        }
+    }
+
+}
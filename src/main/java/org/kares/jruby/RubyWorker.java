@@ -15,19 +15,46 @@
  */
 package org.kares.jruby;
 
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.jruby.Ruby;
+import org.jruby.RubyModule;
+import org.jruby.RubyThread;
+import org.jruby.exceptions.RaiseException;
+import org.jruby.runtime.ThreadContext;
+import org.jruby.runtime.builtin.IRubyObject;
 
 /**
  * Ruby (JRuby) worker.
  *
  * @author kares <self_AT_kares_DOT_org>
  */
-public class RubyWorker implements Runnable {
+public class RubyWorker implements Runnable, RubyWorkerMBean {
 
-    protected final Ruby runtime;
+    protected volatile Ruby runtime;
     protected final String script;
     protected final String fileName;
 
+    private static final ThreadLocal<RubyWorker> current = new ThreadLocal<RubyWorker>();
+
+    private volatile WorkerScript workerScript;
+    private volatile boolean stopped;
+    private volatile RubyThread rubyThread;
+
+    private volatile int restartCount;
+    private volatile Throwable lastFailure;
+    private volatile long lastFailureTime;
+
+    private final AtomicReference<WorkerState> state = new AtomicReference<WorkerState>(WorkerState.STARTING);
+    private volatile long stateTime = System.currentTimeMillis();
+    private final WorkerMetrics metrics = new WorkerMetrics();
+    private final CountDownLatch ready = new CountDownLatch(1);
+
     public RubyWorker(final Ruby runtime, final String script) {
         this(runtime, script, null);
     }
@@ -40,23 +67,306 @@ public class RubyWorker implements Runnable {
 
     @Override
     public void run() {
-        if ( fileName == null ) {
-            runtime.evalScriptlet(script);
+        current.set(this);
+        rubyThread = runtime.getCurrentContext().getThread(); // (adopted) worker thread
+        setState(WorkerState.RUNNING);
+        try {
+            final IRubyObject compiled = compiledScript();
+            if ( compiled != null ) {
+                compiled.callMethod(runtime.getCurrentContext(), "call");
+            }
+            else if ( fileName == null ) {
+                runtime.evalScriptlet(script);
+            }
+            else if ( script == null ) {
+                // try loading the script using ruby :
+                runtime.evalScriptlet("load '" + fileName + "'");
+            }
+            else {
+                runtime.executeScript(script, fileName);
+            }
         }
-        else if ( script == null ) {
-            // try loading the script using ruby :
-            runtime.evalScriptlet("load '" + fileName + "'");
+        finally {
+            setState(WorkerState.DEAD);
+            current.remove();
         }
-        else {
-            runtime.executeScript(script, fileName);
+    }
+
+    private static final String COMPILED_SCRIPTS = "__jruby_rack_worker_scripts__";
+
+    /**
+     * Parses the script once per runtime (workers sharing a runtime as well as
+     * restarted workers re-use the compiled script).
+     * @return a callable (Ruby lambda) or null if the script failed to compile
+     */
+    private IRubyObject compiledScript() {
+        final Ruby runtime = this.runtime;
+        final ConcurrentMap<String, CompiledScript> scripts = compiledScripts(runtime);
+        final String key = fileName != null ? fileName : script;
+        CompiledScript compiled = scripts.get(key);
+        if ( compiled == null || ! compiled.isFor(script) ) {
+            synchronized (scripts) {
+                compiled = scripts.get(key);
+                if ( compiled == null || ! compiled.isFor(script) ) {
+                    compiled = new CompiledScript(script, compile(runtime));
+                    scripts.put(key, compiled);
+                }
+            }
+        }
+        return compiled.callable;
+    }
+
+    private IRubyObject compile(final Ruby runtime) {
+        final ThreadContext context = runtime.getCurrentContext();
+        try {
+            runtime.evalScriptlet("require 'jruby/rack/worker/script'");
+            final RubyModule compiler = runtime.getClassFromPath("JRuby::Rack::Worker::Script");
+            if ( script == null ) {
+                return compiler.callMethod(context, "compile_file", runtime.newString(fileName));
+            }
+            return compiler.callMethod(context, "compile", new IRubyObject[] {
+                runtime.newString(script), fileName == null ? runtime.getNil() : runtime.newString(fileName)
+            });
+        }
+        catch (final RaiseException e) { // e.g. SyntaxError - let run() fail as usual
+            return null;
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<String, CompiledScript> compiledScripts(final Ruby runtime) {
+        final RubyModule object = runtime.getObject();
+        synchronized (object) {
+            Object scripts = object.getInternalVariables().getInternalVariable(COMPILED_SCRIPTS);
+            if ( scripts == null ) {
+                scripts = new ConcurrentHashMap<String, CompiledScript>(4);
+                object.getInternalVariables().setInternalVariable(COMPILED_SCRIPTS, scripts);
+            }
+            return (ConcurrentMap<String, CompiledScript>) scripts;
+        }
+    }
+
+    private static final class CompiledScript {
+
+        final String script; // source (null if loaded)
+        final IRubyObject callable;
+
+        CompiledScript(final String script, final IRubyObject callable) {
+            this.script = script;
+            this.callable = callable;
+        }
+
+        boolean isFor(final String script) {
+            return this.script == script || ( this.script != null && this.script.equals(script) );
+        }
+
+    }
+
+    /**
+     * @return the worker running on the current thread (or null)
+     */
+    public static RubyWorker current() {
+        return current.get();
+    }
+
     public void stop() {
+        stopped = true;
         // NOTE: we did not create the runtime, thus we do not tear-down !
         // if ( true ) runtime.tearDown();
     }
 
+    /**
+     * @return true if {@link #stop()} has been called
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public Ruby getRuntime() {
+        return runtime;
+    }
+
+    /**
+     * @return the worker (script) configuration this worker has been started for
+     */
+    public WorkerScript getWorkerScript() {
+        return workerScript;
+    }
+
+    void setWorkerScript(final WorkerScript workerScript) {
+        this.workerScript = workerScript;
+    }
+
+    /**
+     * @return how many times this worker has been restarted (by a supervisor)
+     */
+    public int getRestartCount() {
+        return restartCount;
+    }
+
+    /**
+     * @return the (last) throwable that caused this worker to exit or null
+     */
+    public Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * @return time (millis) of the last failure or 0 if never failed
+     */
+    public long getLastFailureTime() {
+        return lastFailureTime;
+    }
+
+    public WorkerState getWorkerState() {
+        return state.get();
+    }
+
+    @Override
+    public String getState() {
+        return state.get().name();
+    }
+
+    /**
+     * @return time (millis) of the last state change
+     */
+    public long getStateTime() {
+        return stateTime;
+    }
+
+    private void setState(final WorkerState newState) {
+        state.set(newState);
+        stateTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Changes the state unless the worker is already dead (a late job report
+     * or resume should not bring it back to life).
+     */
+    private void changeState(final WorkerState newState) {
+        WorkerState current;
+        do {
+            current = state.get();
+            if ( current == WorkerState.DEAD || current == newState ) return;
+        }
+        while ( ! state.compareAndSet(current, newState) );
+        stateTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public String getScriptId() {
+        final WorkerScript workerScript = this.workerScript;
+        return workerScript == null ? null : workerScript.getId();
+    }
+
+    public WorkerMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getJobsProcessed() {
+        return metrics.getJobsProcessed();
+    }
+
+    @Override
+    public long getJobsFailed() {
+        return metrics.getJobsFailed();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return metrics.getOneMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return metrics.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return metrics.getFifteenMinuteRate();
+    }
+
+    @Override
+    public Date getLastJobTime() {
+        final long time = metrics.getLastJobTime();
+        return time == 0 ? null : new Date(time);
+    }
+
+    @Override
+    public String getLastFailureMessage() {
+        final Throwable failure = lastFailure;
+        return failure == null ? null : failure.toString();
+    }
+
+    /**
+     * @return whether the worker reported it's ready (to process jobs)
+     */
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * @return the Ruby thread of the worker (running it's script) or null
+     */
+    RubyThread getRubyThread() {
+        return rubyThread;
+    }
+
+    void ready() {
+        if ( ready.getCount() > 0 ) ready.countDown();
+    }
+
+    boolean awaitReady(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /**
+     * Records the worker started processing a job.
+     */
+    void jobStarted() {
+        changeState(WorkerState.RUNNING);
+    }
+
+    /**
+     * Records the worker completed a job and is now waiting for more.
+     * @param success whether the job succeeded
+     */
+    void jobCompleted(final boolean success) {
+        metrics.jobCompleted(success);
+        changeState(WorkerState.IDLE);
+    }
+
+    /**
+     * Records the worker is (or is no longer) waiting to be resumed.
+     * @param paused
+     */
+    void paused(final boolean paused) {
+        changeState(paused ? WorkerState.PAUSED : WorkerState.IDLE);
+    }
+
+    /**
+     * Records the worker exited (due a failure if given).
+     * @param failure
+     */
+    void exited(final Throwable failure) {
+        if ( failure != null ) {
+            lastFailure = failure;
+            lastFailureTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Called before the worker is (re-)run by a supervisor.
+     * @param runtime the runtime to use from now on
+     */
+    void restarted(final Ruby runtime) {
+        this.runtime = runtime;
+        setState(WorkerState.STARTING);
+        restartCount++; // only updated from the worker's thread
+    }
+
     @Override
     public String toString()
     {
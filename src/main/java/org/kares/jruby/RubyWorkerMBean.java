@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.Date;
+
+/**
+ * Management interface of a single {@link RubyWorker}.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public interface RubyWorkerMBean {
+
+    /**
+     * @return the worker state (name)
+     * @see WorkerState
+     */
+    String getState();
+
+    /**
+     * @return the worker (script) id e.g. "resque" or null for custom scripts
+     */
+    String getScriptId();
+
+    long getJobsProcessed();
+
+    long getJobsFailed();
+
+    double getOneMinuteRate();
+
+    double getFiveMinuteRate();
+
+    double getFifteenMinuteRate();
+
+    Date getLastJobTime();
+
+    int getRestartCount();
+
+    String getLastFailureMessage();
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Caches (decoded) worker script sources by path.
+ *
+ * A cached source is re-used as long as the path's last modified time did not
+ * change, if it can not be determined the content is re-read but only decoded
+ * if it's (hash) changed.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+class ScriptSourceCache {
+
+    // Ruby's magic comment e.g. # -*- coding: utf-8 -*- or # encoding=ISO-8859-1
+    private static final Pattern CODING = Pattern.compile("coding[:=]\\s*([-\\w.]+)");
+    private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    private final WorkerManager manager;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>(4);
+
+    private final AtomicLong readCount = new AtomicLong(0);
+    private final AtomicLong hitCount = new AtomicLong(0);
+
+    ScriptSourceCache(final WorkerManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * @param path
+     * @return the (decoded) script source or null if the path does not exist
+     * @throws IOException
+     */
+    String load(final String path) throws IOException {
+        final long lastModified = manager.getLastModified(path);
+        final Entry cached = entries.get(path);
+        if ( cached != null && lastModified != 0 && cached.lastModified == lastModified ) {
+            hitCount.incrementAndGet();
+            return cached.source;
+        }
+
+        final InputStream stream = manager.openPath(path);
+        if ( stream == null ) {
+            entries.remove(path); return null;
+        }
+        final byte[] bytes;
+        try {
+            bytes = readFully(stream);
+        }
+        finally {
+            stream.close();
+        }
+        readCount.incrementAndGet();
+
+        final long hash = hash(bytes);
+        final String source;
+        if ( cached != null && cached.hash == hash && cached.length == bytes.length ) {
+            hitCount.incrementAndGet();
+            source = cached.source; // unchanged - no need to decode
+        }
+        else {
+            source = decode(bytes);
+        }
+        entries.put(path, new Entry(lastModified, hash, bytes.length, source));
+        return source;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return how many times a script has been (re-)read
+     */
+    long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * @return how many times a cached source has been returned
+     */
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Decodes the script using the encoding from a magic <code>coding:</code>
+     * comment on it's first line (defaults to UTF-8).
+     * @param bytes
+     * @return decoded script
+     */
+    static String decode(final byte[] bytes) {
+        Charset charset = DEFAULT_CHARSET;
+        if ( bytes.length > 0 && bytes[0] == '#' ) {
+            int end = 0; while ( end < bytes.length && bytes[end] != '\n' ) end++;
+            final Matcher matcher = CODING.matcher( new String(bytes, 0, end, Charset.forName("ISO-8859-1")) );
+            if ( matcher.find() ) {
+                try {
+                    charset = Charset.forName( matcher.group(1) );
+                }
+                catch (final IllegalArgumentException e) { // unsupported/illegal name
+                    charset = DEFAULT_CHARSET;
+                }
+            }
+        }
+        return new String(bytes, charset);
+    }
+
+    private static byte[] readFully(final InputStream stream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        final byte[] buffer = new byte[8192]; int read;
+        while ( ( read = stream.read(buffer) ) != -1 ) out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    private static long hash(final byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private static final class Entry {
+
+        final long lastModified;
+        final long hash;
+        final int length;
+        final String source;
+
+        Entry(final long lastModified, final long hash, final int length, final String source) {
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.length = length;
+            this.source = source;
+        }
+
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package org.kares.jruby;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -27,6 +28,14 @@ import javax.servlet.ServletContext;
  */
 public abstract class ServletWorkerManager extends WorkerManager {
 
+    /**
+     * The (servlet) context attribute the manager is published under while
+     * running, for runtimes it's not exported to e.g. JRuby-Rack's request
+     * runtimes (to notify or enqueue work from a request).
+     * check-out <code>jruby/rack/worker/env.rb</code>
+     */
+    public static final String CONTEXT_ATTRIBUTE = "jruby.worker.manager";
+
     private final ServletContext context;
 
     public ServletWorkerManager(final ServletContext context) {
@@ -41,6 +50,20 @@ public abstract class ServletWorkerManager extends WorkerManager {
         return context;
     }
 
+    @Override
+    public void startup() {
+        if ( isExported() ) context.setAttribute(CONTEXT_ATTRIBUTE, this);
+        super.startup();
+    }
+
+    @Override
+    public void shutdown() {
+        if ( context.getAttribute(CONTEXT_ATTRIBUTE) == this ) {
+            context.removeAttribute(CONTEXT_ATTRIBUTE);
+        }
+        super.shutdown();
+    }
+
     @Override
     public String getParameter(final String key) {
         String val = context.getInitParameter(key);
@@ -55,6 +78,22 @@ public abstract class ServletWorkerManager extends WorkerManager {
         return context.getResourceAsStream(path);
     }
 
+    @Override
+    protected File getFile(final String path) {
+        final String realPath = context.getRealPath(path); // null if packed
+        return realPath == null ? null : new File(realPath);
+    }
+
+    /**
+     * @return the container provided (temporary) work directory for the webapp
+     */
+    @Override
+    protected File getWorkDirectory() {
+        final Object tempDir = context.getAttribute("javax.servlet.context.tempdir");
+        if ( tempDir instanceof File ) return (File) tempDir;
+        return super.getWorkDirectory();
+    }
+
     @Override
     protected void log(final String message) {
         context.log(message);
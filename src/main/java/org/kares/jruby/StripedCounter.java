@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spreading updates across (padded) cells picked by the updating
+ * thread, thus threads incrementing concurrently rarely contend.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+final class StripedCounter {
+
+    private static final int STRIPES; // power of 2
+    static {
+        final int cpus = Runtime.getRuntime().availableProcessors();
+        int stripes = 1; while ( stripes < cpus * 2 ) stripes <<= 1;
+        STRIPES = Math.min(stripes, 64);
+    }
+    private static final int PAD = 8; // 8 longs = 64 bytes (a cache line)
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+    void increment() {
+        add(1);
+    }
+
+    void add(final long x) {
+        cells.addAndGet(index(), x);
+    }
+
+    long sum() {
+        long sum = 0;
+        for ( int i = 0; i < STRIPES; i++ ) sum += cells.get(i * PAD);
+        return sum;
+    }
+
+    /**
+     * NOTE: not an atomic snapshot (concurrent updates are not lost though).
+     * @return sum
+     */
+    long sumThenReset() {
+        long sum = 0;
+        for ( int i = 0; i < STRIPES; i++ ) sum += cells.getAndSet(i * PAD, 0);
+        return sum;
+    }
+
+    private static int index() {
+        final long id = Thread.currentThread().getId();
+        final int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ( (hash >>> 16) & (STRIPES - 1) ) * PAD;
+    }
+
+}
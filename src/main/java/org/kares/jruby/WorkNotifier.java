@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wakes up idle (polling) workers once work gets enqueued in the same JVM.
+ *
+ * Notifications are counted (per queue) so a worker takes a "generation"
+ * before it polls for jobs and waits unless it changed since, this way a job
+ * enqueued while the worker was busy polling is not missed.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class WorkNotifier {
+
+    private final AtomicLong generation = new AtomicLong(0); // all notifications
+    private final AtomicLong anyGeneration = new AtomicLong(0); // notifications without a queue
+    private final ConcurrentMap<String, AtomicLong> queueGenerations = new ConcurrentHashMap<String, AtomicLong>();
+
+    private long wakeups; // wakeAll() calls (guarded by lock)
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition notified = lock.newCondition();
+
+    /**
+     * Notifies workers there's (new) work on the given queue.
+     * @param queue the queue name or null for any queue (wakes up all)
+     */
+    public void notifyWork(final String queue) {
+        if ( queue != null ) queueGeneration(queue).incrementAndGet();
+        else anyGeneration.incrementAndGet();
+        generation.incrementAndGet();
+        signalAll(false);
+    }
+
+    /**
+     * Wakes up all waiting workers (e.g. to check whether they should stop).
+     */
+    public void wakeAll() {
+        signalAll(true);
+    }
+
+    private void signalAll(final boolean wakeup) {
+        lock.lock();
+        try {
+            if ( wakeup ) wakeups++;
+            notified.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param queues the queues a worker polls (null or empty for all)
+     * @return the current notification generation for the given queues
+     */
+    public long getGeneration(final String... queues) {
+        if ( queues == null || queues.length == 0 ) return generation.get();
+        long generation = anyGeneration.get();
+        for ( final String queue : queues ) {
+            final AtomicLong queueGeneration = queueGenerations.get(queue);
+            if ( queueGeneration != null ) generation += queueGeneration.get();
+        }
+        return generation;
+    }
+
+    /**
+     * Waits until work is notified on one of the given queues (since the given
+     * generation) or the timeout elapses, returns early on a {@link #wakeAll()}.
+     *
+     * @param queues the queues a worker polls (null or empty for all)
+     * @param since a generation previously obtained or a negative value
+     * @param timeout max time to wait (in milliseconds)
+     * @return true if work got notified (since the given generation)
+     * @throws InterruptedException
+     */
+    public boolean awaitWork(final String[] queues, long since, final long timeout)
+        throws InterruptedException {
+        if ( since < 0 ) since = getGeneration(queues);
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            final long wakeups = this.wakeups;
+            while ( getGeneration(queues) == since ) {
+                // work notified on other queues only wakes us up to wait again
+                if ( remaining <= 0 || wakeups != this.wakeups ) return false;
+                remaining = notified.awaitNanos(remaining);
+            }
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private AtomicLong queueGeneration(final String queue) {
+        AtomicLong queueGeneration = queueGenerations.get(queue);
+        if ( queueGeneration == null ) {
+            final AtomicLong newGeneration = new AtomicLong(0);
+            queueGeneration = queueGenerations.putIfAbsent(queue, newGeneration);
+            if ( queueGeneration == null ) queueGeneration = newGeneration;
+        }
+        return queueGeneration;
+    }
+
+}
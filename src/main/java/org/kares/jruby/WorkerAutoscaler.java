@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grows and shrinks the number of workers (for each worker script) between
+ * it's configured minimum and maximum based on the backlog reported by a
+ * {@link BacklogProbe} (registered by the worker).
+ *
+ * Scales up once the backlog exceeds the "up" threshold per worker and scales
+ * down (a single worker at a time) when it drops below the "down" threshold
+ * per worker, no scaling happens during the cool-down period after a change.
+ * Workers are stopped cooperatively (they're expected to check
+ * {@link WorkerManager#isStopRequested()} between jobs).
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class WorkerAutoscaler implements Runnable {
+
+    private final WorkerManager manager;
+    private final long cooldown; // millis
+    private final long scaleUpBacklog; // per worker
+    private final long scaleDownBacklog; // per worker
+
+    private final List<ScriptScaler> scalers = new ArrayList<ScriptScaler>();
+
+    private ScheduledExecutorService executor;
+
+    public WorkerAutoscaler(final WorkerManager manager, final long cooldown,
+        final long scaleUpBacklog, final long scaleDownBacklog) {
+        if ( scaleDownBacklog >= scaleUpBacklog ) {
+            throw new IllegalArgumentException("scale down backlog (" + scaleDownBacklog + ") " +
+                "needs to be less than scale up backlog (" + scaleUpBacklog + ")");
+        }
+        this.manager = manager;
+        this.cooldown = cooldown;
+        this.scaleUpBacklog = scaleUpBacklog;
+        this.scaleDownBacklog = scaleDownBacklog;
+    }
+
+    /**
+     * Manage the given worker (script).
+     * @param workerScript
+     * @param min minimum worker count
+     * @param max maximum worker count
+     */
+    public void add(final WorkerScript workerScript, final int min, final int max) {
+        scalers.add(new ScriptScaler(workerScript, min, max));
+    }
+
+    /**
+     * Start checking backlogs periodically.
+     * @param interval (in milliseconds)
+     */
+    public synchronized void start(final long interval) {
+        if ( executor != null ) return;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable task) {
+                final String prefix = manager.getThreadPrefix();
+                final Thread thread = new Thread(task,
+                    ( prefix == null || prefix.length() == 0 ? "" : prefix + '-' ) + "jruby-rack-autoscaler");
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+        executor.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if ( executor == null ) return;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    @Override
+    public void run() {
+        synchronized (manager.restartLock) { // do not interfere with a rolling restart
+            manager.reapWorkers();
+            for ( final ScriptScaler scaler : scalers ) {
+                try {
+                    scale(scaler, System.currentTimeMillis());
+                }
+                catch (final RuntimeException e) {
+                    manager.log("[" + manager.getClass().getName() + "] failed scaling workers for: " +
+                        scaler.workerScript, e);
+                }
+            }
+        }
+    }
+
+    void scale(final ScriptScaler scaler, final long now) {
+        final WorkerScript workerScript = scaler.workerScript;
+        final List<RubyWorker> active = manager.getActiveWorkers(workerScript);
+        final int current = active.size();
+
+        if ( current < scaler.min ) { // e.g. workers died (without being restarted)
+            restore(scaler, current, now);
+            return;
+        }
+
+        final BacklogProbe probe = workerScript.getBacklogProbe();
+        if ( probe == null || scaler.max <= scaler.min ) return;
+        if ( now - scaler.lastScaled < cooldown ) return;
+
+        final long backlog = probe.getBacklog();
+        if ( current < scaler.max && backlog > scaleUpBacklog * current ) {
+            final long needed = ( backlog + scaleUpBacklog - 1 ) / scaleUpBacklog;
+            scaleTo(scaler, current, (int) Math.max(current + 1, Math.min(scaler.max, needed)), now, backlog);
+        }
+        else if ( current > scaler.min && backlog < scaleDownBacklog * current ) {
+            manager.log("[" + manager.getClass().getName() + "] scaling down workers for: " + workerScript +
+                " (" + current + " -> " + (current - 1) + ") backlog: " + backlog);
+            manager.retireWorker( active.get(active.size() - 1) );
+            scaler.lastScaled = now;
+        }
+    }
+
+    private void restore(final ScriptScaler scaler, final int current, final long now) {
+        final WorkerScript workerScript = scaler.workerScript;
+        if ( workerScript.isRestartsExhausted() ) return; // gave up on (crashing) workers
+        if ( now - scaler.lastScaled < cooldown ) return;
+
+        final int maxRestarts = manager.getConfig().getRestartMax(); // same budget as supervised workers
+        if ( maxRestarts >= 0 && scaler.restarts >= maxRestarts ) {
+            manager.log("[" + manager.getClass().getName() + "] not restoring workers for: " + workerScript +
+                " (" + current + " < " + scaler.min + ") restarted " + scaler.restarts + " times already");
+            workerScript.setRestartsExhausted(true);
+            return;
+        }
+        scaler.restarts += scaler.min - current;
+        scaleTo(scaler, current, scaler.min, now, -1);
+    }
+
+    private void scaleTo(final ScriptScaler scaler, final int current, final int target,
+        final long now, final long backlog) {
+        manager.log("[" + manager.getClass().getName() + "] scaling up workers for: " + scaler.workerScript +
+            " (" + current + " -> " + target + ")" + ( backlog >= 0 ? " backlog: " + backlog : "" ));
+        if ( scaler.threadFactory == null ) {
+            scaler.threadFactory = manager.newThreadFactory(scaler.workerScript);
+        }
+        for ( int i = current; i < target; i++ ) {
+            manager.startWorker(scaler.workerScript, scaler.threadFactory);
+        }
+        scaler.lastScaled = now;
+    }
+
+    static class ScriptScaler {
+
+        final WorkerScript workerScript;
+        final int min, max;
+
+        ThreadFactory threadFactory;
+        long lastScaled;
+        int restarts; // (dead) workers replaced so far
+
+        ScriptScaler(final WorkerScript workerScript, final int min, final int max) {
+            this.workerScript = workerScript;
+            this.min = min; this.max = Math.max(min, max);
+        }
+
+    }
+
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.kares.jruby.WorkerManager.*;
+
+/**
+ * An immutable snapshot of the (typed) <code>jruby.worker.*</code> settings.
+ *
+ * Parameters are resolved (and parsed) once using the manager's
+ * {@link WorkerManager#getParameter(String)}, a new snapshot gets swapped in
+ * on {@link WorkerManager#reloadConfig()}.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public final class WorkerConfig {
+
+    /**
+     * Per worker (script) overrides e.g. <code>jruby.worker.resque.thread.count</code>,
+     * unset values are null.
+     */
+    public static final class Script {
+
+        static final Script NONE = new Script(null, null, null, null, null);
+
+        private final Integer threadCount;
+        private final Integer threadPriority;
+        private final String threadType;
+        private final Integer threadMin;
+        private final Integer threadMax;
+
+        Script(Integer threadCount, Integer threadPriority, String threadType,
+            Integer threadMin, Integer threadMax) {
+            this.threadCount = threadCount;
+            this.threadPriority = threadPriority;
+            this.threadType = threadType;
+            this.threadMin = threadMin;
+            this.threadMax = threadMax;
+        }
+
+        public Integer getThreadCount() { return threadCount; }
+
+        public Integer getThreadPriority() { return threadPriority; }
+
+        public String getThreadType() { return threadType; }
+
+        public Integer getThreadMin() { return threadMin; }
+
+        public Integer getThreadMax() { return threadMax; }
+
+    }
+
+    private final List<String> warnings = new ArrayList<String>(2);
+
+    private final String workers;
+    private final String script;
+    private final String scriptPath;
+    private final Map<String, Script> scripts;
+
+    private final int threadCount;
+    private final int threadPriority;
+    private final String threadType;
+    private final Integer threadMin;
+    private final Integer threadMax;
+
+    private final boolean parallelStartup;
+    private final int startupConcurrency;
+
+    private final boolean autoscale;
+    private final int autoscaleInterval;
+    private final int autoscaleCooldown;
+    private final int autoscaleUp;
+    private final int autoscaleDown;
+
+    private final boolean restart;
+    private final int restartMax;
+    private final int restartDelay;
+    private final int restartDelayMax;
+    private final boolean restartFreshRuntime;
+
+    private final int shutdownTimeout;
+    private final boolean shutdownEscalate;
+    private final int readyTimeout;
+    private final boolean scriptWatch;
+    private final boolean jmx;
+    private final boolean servletLogger;
+
+    private final int inmemoryCapacity;
+    private final JobQueue.Overflow inmemoryOverflow;
+    private final int inmemoryOfferTimeout;
+
+    private final String journalDir;
+    private final int journalSegmentSize;
+
+    private final boolean runtimePool;
+    private final Integer runtimePoolMin;
+    private final Integer runtimePoolMax;
+    private final int runtimePoolTimeout;
+    private final boolean runtimeBootPlain;
+
+    WorkerConfig(final WorkerManager manager) {
+        workers = manager.getParameter(WORKER_KEY);
+        script = manager.getParameter(SCRIPT_KEY);
+        scriptPath = manager.getParameter(SCRIPT_PATH_KEY);
+
+        threadCount = intValue(manager, THREAD_COUNT_KEY, 1);
+        final Integer priority = parseThreadPriority(THREAD_PRIORITY_KEY, manager.getParameter(THREAD_PRIORITY_KEY));
+        threadPriority = priority != null ? priority : Thread.NORM_PRIORITY;
+        final String type = parseThreadType(THREAD_TYPE_KEY, manager.getParameter(THREAD_TYPE_KEY));
+        threadType = type != null ? type : "platform";
+        threadMin = intValue(manager, THREAD_MIN_KEY, null);
+        threadMax = intValue(manager, THREAD_MAX_KEY, null);
+
+        parallelStartup = Boolean.valueOf(manager.getParameter(STARTUP_PARALLEL_KEY));
+        startupConcurrency = intValue(manager, STARTUP_CONCURRENCY_KEY, Runtime.getRuntime().availableProcessors());
+
+        autoscale = Boolean.valueOf(manager.getParameter(AUTOSCALE_KEY));
+        autoscaleInterval = intValue(manager, AUTOSCALE_INTERVAL_KEY, 10);
+        autoscaleCooldown = intValue(manager, AUTOSCALE_COOLDOWN_KEY, 60);
+        autoscaleUp = intValue(manager, AUTOSCALE_UP_KEY, 10);
+        autoscaleDown = intValue(manager, AUTOSCALE_DOWN_KEY, 1);
+
+        restart = Boolean.valueOf(manager.getParameter(RESTART_KEY));
+        restartMax = intValue(manager, RESTART_MAX_KEY, 10);
+        restartDelay = intValue(manager, RESTART_DELAY_KEY, 1000);
+        restartDelayMax = intValue(manager, RESTART_DELAY_MAX_KEY, 60 * 1000);
+        restartFreshRuntime = "fresh".equalsIgnoreCase(manager.getParameter(RESTART_RUNTIME_KEY));
+
+        shutdownTimeout = intValue(manager, SHUTDOWN_TIMEOUT_KEY, 5000);
+        shutdownEscalate = Boolean.valueOf(manager.getParameter(SHUTDOWN_ESCALATE_KEY));
+        readyTimeout = intValue(manager, READY_TIMEOUT_KEY, 60 * 1000);
+        scriptWatch = Boolean.valueOf(manager.getParameter(SCRIPT_WATCH_KEY));
+        final String jmx = manager.getParameter(JMX_KEY);
+        this.jmx = jmx == null || Boolean.valueOf(jmx);
+        servletLogger = Boolean.valueOf(manager.getParameter(FORCE_USE_SERVLET_LOGGER));
+
+        final Integer capacity = intValue(manager, INMEMORY_CAPACITY_KEY, 10000);
+        if ( capacity < 1 ) {
+            warnings.add("invalid " + INMEMORY_CAPACITY_KEY + " parameter value = " + capacity);
+        }
+        inmemoryCapacity = capacity < 1 ? 10000 : capacity;
+        final String overflow = manager.getParameter(INMEMORY_OVERFLOW_KEY);
+        inmemoryOverflow = JobQueue.Overflow.parse(overflow);
+        if ( overflow != null && inmemoryOverflow == null ) {
+            warnings.add("unsupported " + INMEMORY_OVERFLOW_KEY + " parameter value = '" + overflow + "'");
+        }
+        inmemoryOfferTimeout = intValue(manager, INMEMORY_OFFER_TIMEOUT_KEY, 1000);
+
+        final String journalDir = manager.getParameter(JOURNAL_DIR_KEY);
+        this.journalDir = journalDir == null ? "jruby-worker-journal" : journalDir;
+        journalSegmentSize = intValue(manager, JOURNAL_SEGMENT_SIZE_KEY, 16 * 1024 * 1024);
+
+        runtimePool = Boolean.valueOf(manager.getParameter(RUNTIME_POOL_KEY));
+        runtimePoolMin = intValue(manager, RUNTIME_POOL_MIN_KEY, null);
+        runtimePoolMax = intValue(manager, RUNTIME_POOL_MAX_KEY, null);
+        runtimePoolTimeout = intValue(manager, RUNTIME_POOL_TIMEOUT_KEY, 120);
+        final String boot = manager.getParameter(RUNTIME_BOOT_KEY);
+        runtimeBootPlain = "plain".equalsIgnoreCase(boot);
+        if ( boot != null && ! runtimeBootPlain && ! "app".equalsIgnoreCase(boot) ) {
+            warnings.add("unsupported " + RUNTIME_BOOT_KEY + " parameter value = '" + boot + "'");
+        }
+
+        final Map<String, Script> scripts = new HashMap<String, Script>(4);
+        if ( workers != null ) {
+            for ( final String worker : workers.split(",") ) {
+                if ( worker.trim().length() == 0 ) continue;
+                final String key = workerKey(worker.trim());
+                if ( ! scripts.containsKey(key) ) scripts.put(key, resolveScript(manager, key));
+            }
+        }
+        this.scripts = Collections.unmodifiableMap(scripts);
+    }
+
+    private Script resolveScript(final WorkerManager manager, final String workerKey) {
+        final String prefix = WORKER_KEY + '.' + workerKey;
+        final String priorityKey = prefix + THREAD_PRIORITY_KEY.substring(WORKER_KEY.length());
+        final String typeKey = prefix + THREAD_TYPE_KEY.substring(WORKER_KEY.length());
+        return new Script(
+            intValue(manager, prefix + THREAD_COUNT_KEY.substring(WORKER_KEY.length()), null),
+            parseThreadPriority(priorityKey, manager.getParameter(priorityKey)),
+            parseThreadType(typeKey, manager.getParameter(typeKey)),
+            intValue(manager, prefix + THREAD_MIN_KEY.substring(WORKER_KEY.length()), null),
+            intValue(manager, prefix + THREAD_MAX_KEY.substring(WORKER_KEY.length()), null)
+        );
+    }
+
+    /**
+     * @param workerId e.g. "Delayed::Job" or "resque"
+     * @return the key used for scoped worker settings e.g. "delayed_job"
+     */
+    static String workerKey(final String workerId) {
+        return workerId.replace("::", "_").toLowerCase();
+    }
+
+    private Integer intValue(final WorkerManager manager, final String key, final Integer defaultValue) {
+        final String value = manager.getParameter(key);
+        try {
+            if ( value != null ) return Integer.parseInt(value.trim());
+        }
+        catch (final NumberFormatException e) {
+            warnings.add("could not parse " + key + " parameter value = " + value);
+        }
+        return defaultValue;
+    }
+
+    private Integer parseThreadPriority(final String key, final String priority) {
+        try {
+            if ( priority != null ) {
+                if ( "NORM".equalsIgnoreCase(priority) )
+                    return Thread.NORM_PRIORITY;
+                else if ( "MIN".equalsIgnoreCase(priority) )
+                    return Thread.MIN_PRIORITY;
+                else if ( "MAX".equalsIgnoreCase(priority) )
+                    return Thread.MAX_PRIORITY;
+                return Integer.parseInt(priority);
+            }
+        }
+        catch (final NumberFormatException e) {
+            warnings.add("could not parse " + key + " parameter value = '" + priority + "'");
+        }
+        return null;
+    }
+
+    private String parseThreadType(final String key, final String type) {
+        if ( type == null ) return null;
+        if ( "platform".equalsIgnoreCase(type) ) return "platform";
+        if ( "virtual".equalsIgnoreCase(type) ) return "virtual";
+        warnings.add("unsupported " + key + " parameter value = '" + type + "'");
+        return null;
+    }
+
+    /**
+     * @return problems (unparseable values) found while resolving parameters
+     */
+    List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * @return the configured (built-in) worker names e.g. "resque,Delayed::Job"
+     */
+    public String getWorkers() { return workers; }
+
+    public String getScript() { return script; }
+
+    public String getScriptPath() { return scriptPath; }
+
+    /**
+     * @param workerId a (built-in) worker name as listed in {@link #getWorkers()}
+     * @return per worker settings (never null)
+     */
+    public Script getScriptConfig(final String workerId) {
+        final Script script = scripts.get(workerKey(workerId));
+        return script != null ? script : Script.NONE;
+    }
+
+    public int getThreadCount() { return threadCount; }
+
+    public int getThreadPriority() { return threadPriority; }
+
+    public String getThreadType() { return threadType; }
+
+    public Integer getThreadMin() { return threadMin; }
+
+    public Integer getThreadMax() { return threadMax; }
+
+    public boolean isParallelStartup() { return parallelStartup; }
+
+    public int getStartupConcurrency() { return startupConcurrency; }
+
+    public boolean isAutoscale() { return autoscale; }
+
+    /**
+     * @return auto-scaling interval in seconds
+     */
+    public int getAutoscaleInterval() { return autoscaleInterval; }
+
+    /**
+     * @return auto-scaling cool-down in seconds
+     */
+    public int getAutoscaleCooldown() { return autoscaleCooldown; }
+
+    public int getAutoscaleUp() { return autoscaleUp; }
+
+    public int getAutoscaleDown() { return autoscaleDown; }
+
+    public boolean isRestart() { return restart; }
+
+    public int getRestartMax() { return restartMax; }
+
+    /**
+     * @return the (initial) restart delay in milliseconds
+     */
+    public int getRestartDelay() { return restartDelay; }
+
+    /**
+     * @return the maximum restart delay in milliseconds
+     */
+    public int getRestartDelayMax() { return restartDelayMax; }
+
+    public boolean isRestartFreshRuntime() { return restartFreshRuntime; }
+
+    /**
+     * @return the shutdown timeout in milliseconds
+     */
+    public int getShutdownTimeout() { return shutdownTimeout; }
+
+    public boolean isShutdownEscalate() { return shutdownEscalate; }
+
+    /**
+     * @return the (worker) ready timeout in milliseconds
+     */
+    public int getReadyTimeout() { return readyTimeout; }
+
+    public boolean isScriptWatch() { return scriptWatch; }
+
+    public boolean isJmx() { return jmx; }
+
+    public boolean isServletLogger() { return servletLogger; }
+
+    public int getInmemoryCapacity() { return inmemoryCapacity; }
+
+    /**
+     * @return the in-memory queue overflow policy (null for the default)
+     */
+    public JobQueue.Overflow getInmemoryOverflow() { return inmemoryOverflow; }
+
+    /**
+     * @return how long to block on a full in-memory queue in milliseconds
+     */
+    public int getInmemoryOfferTimeout() { return inmemoryOfferTimeout; }
+
+    /**
+     * @return the job journal directory (might be relative to the work directory)
+     */
+    public String getJournalDir() { return journalDir; }
+
+    /**
+     * @return the job journal segment size in bytes
+     */
+    public int getJournalSegmentSize() { return journalSegmentSize; }
+
+    public boolean isRuntimePool() { return runtimePool; }
+
+    /**
+     * @return the (dedicated) worker runtime pool minimum or null (derived
+     * from the configured worker thread counts)
+     */
+    public Integer getRuntimePoolMin() { return runtimePoolMin; }
+
+    /**
+     * @return the (dedicated) worker runtime pool maximum or null
+     */
+    public Integer getRuntimePoolMax() { return runtimePoolMax; }
+
+    /**
+     * @return how long to wait for a pooled worker runtime in seconds
+     */
+    public int getRuntimePoolTimeout() { return runtimePoolTimeout; }
+
+    /**
+     * @return whether worker runtimes are booted without the application
+     */
+    public boolean isRuntimeBootPlain() { return runtimeBootPlain; }
+
+}
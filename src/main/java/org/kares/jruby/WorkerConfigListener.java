@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+/**
+ * Notified when a manager's configuration gets reloaded.
+ *
+ * @see WorkerManager#addConfigListener(WorkerConfigListener)
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public interface WorkerConfigListener {
+
+    /**
+     * @param previous the configuration that got replaced
+     * @param current the (freshly resolved) configuration now in use
+     */
+    void configChanged(WorkerConfig previous, WorkerConfig current) ;
+
+}
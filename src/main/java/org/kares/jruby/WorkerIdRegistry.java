@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker (id) registrations for (Ruby) worker adapters that need to tell
+ * whether a worker registered in a shared store (e.g. Resque's Redis) is still
+ * alive within this process - used to prune dead workers.
+ *
+ * There's a single instance per application (class-loader), a worker id is
+ * bound to the thread that registered it.
+ *
+ * @see WorkerManager#getWorkerIdRegistry()
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class WorkerIdRegistry {
+
+    private static final WorkerIdRegistry INSTANCE = new WorkerIdRegistry();
+
+    public static WorkerIdRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentMap<String, Thread> workers = new ConcurrentHashMap<String, Thread>(16);
+    private final AtomicInteger threadNumber = new AtomicInteger(0);
+    private final AtomicLong lastPruneTime = new AtomicLong(0);
+
+    WorkerIdRegistry() { /* getInstance() */ }
+
+    /**
+     * Registers a worker (id) for the current thread.
+     * @param workerId
+     */
+    public void register(final String workerId) {
+        workers.put(workerId, Thread.currentThread());
+    }
+
+    /**
+     * @param workerId
+     * @return whether the worker was registered
+     */
+    public boolean unregister(final String workerId) {
+        return workers.remove(workerId) != null;
+    }
+
+    public boolean isRegistered(final String workerId) {
+        return workers.containsKey(workerId);
+    }
+
+    /**
+     * @return (a snapshot of) all registered worker ids
+     */
+    public List<String> getWorkerIds() {
+        return new ArrayList<String>(workers.keySet());
+    }
+
+    public int size() {
+        return workers.size();
+    }
+
+    /**
+     * @return a number unique within this registry (for naming worker threads)
+     */
+    public int nextThreadNumber() {
+        return threadNumber.incrementAndGet();
+    }
+
+    /**
+     * Whether there's a live thread with the given name, looks at registered
+     * worker threads first - only falls back to enumerating all (JVM) threads
+     * if not found, as the thread might belong to another application.
+     * @param threadName
+     * @return true if a thread with the name is alive
+     * @see #isThreadAlive(String, Set)
+     */
+    public boolean isThreadAlive(final String threadName) {
+        return isThreadAlive(threadName, null);
+    }
+
+    /**
+     * Same as {@link #isThreadAlive(String)} but falls back to the given
+     * snapshot of live threads, to be taken once when checking many names
+     * (e.g. while pruning).
+     * @param threadName
+     * @param threadNames a {@link #getLiveThreadNames()} snapshot (or null)
+     * @return true if a thread with the name is alive
+     */
+    public boolean isThreadAlive(final String threadName, final Set<String> threadNames) {
+        if ( threadName == null ) return false;
+        for ( final Thread thread : workers.values() ) {
+            if ( threadName.equals(thread.getName()) ) {
+                if ( thread.isAlive() ) return true;
+            }
+        }
+        return ( threadNames != null ? threadNames : liveThreadNames() ).contains(threadName);
+    }
+
+    /**
+     * @return names of all live (JVM) threads
+     */
+    public Set<String> getLiveThreadNames() {
+        return liveThreadNames();
+    }
+
+    /**
+     * Pruning dead workers is only meant to happen every once in a while
+     * (not on every worker's startup).
+     * @param interval minimum time (millis) since the last prune
+     * @return true if the caller should prune (no one else will for a while)
+     */
+    public boolean tryPrune(final long interval) {
+        final long now = System.currentTimeMillis();
+        final long last = lastPruneTime.get();
+        if ( last != 0 && now - last < interval ) return false;
+        return lastPruneTime.compareAndSet(last, now);
+    }
+
+    private static Set<String> liveThreadNames() {
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while ( group.getParent() != null ) group = group.getParent();
+        Thread[] threads = new Thread[ group.activeCount() + 16 ];
+        int count;
+        while ( ( count = group.enumerate(threads, true) ) == threads.length ) {
+            threads = new Thread[ threads.length * 2 ];
+        }
+        final Set<String> names = new HashSet<String>(count * 2);
+        for ( int i = 0; i < count; i++ ) names.add( threads[i].getName() );
+        return names;
+    }
+
+}
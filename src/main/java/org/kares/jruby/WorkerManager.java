@@ -19,21 +19,43 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.jruby.Ruby;
+import org.jruby.RubyThread;
 import org.jruby.javasupport.JavaEmbedUtils;
+import org.jruby.runtime.Block;
+import org.jruby.runtime.ThreadContext;
+import org.jruby.runtime.builtin.IRubyObject;
 
 /**
  * Manages JRuby worker threads.
@@ -42,261 +64,1672 @@ import org.jruby.javasupport.JavaEmbedUtils;
  * 
  * @author kares <self_AT_kares_DOT_org>
  */
-public abstract class WorkerManager {
+public abstract class WorkerManager implements WorkerManagerMBean {
+
+    /**
+     * The built-in worker to use.
+     *
+     * <context-param>
+     *   <param-name>jruby.worker</param-name>
+     *   <param-value>Delayed::Job</param-value>
+     * </context-param>
+     */
+    public static final String WORKER_KEY = "jruby.worker";
+
+    /**
+     * The worker script to execute (should be a loop of some kind).
+     * For scripts included in a separate file use {@link #SCRIPT_PATH_KEY}.
+     *
+     * <context-param>
+     *   <param-name>jruby.worker.script</param-name>
+     *   <param-value>
+     *      require 'delayed/jruby_worker'
+     *      Delayed::JRubyWorker.new(:quiet => false).start
+     *   </param-value>
+     * </context-param>
+     */
+    public static final String SCRIPT_KEY = "jruby.worker.script";
+
+    /**
+     * Path to the worker script to be executed - the script will be parsed
+     * and executed as a string thus don't rely on features such as __FILE__ !
+     *
+     * <context-param>
+     *   <param-name>jruby.worker.script.path</param-name>
+     *   <param-value>lib/delayed/jruby_worker.rb</param-value>
+     * </context-param>
+     */
+    public static final String SCRIPT_PATH_KEY = "jruby.worker.script.path";
+
+    /**
+     * Whether to watch the {@link #SCRIPT_PATH_KEY} file (if on disk) for
+     * changes, the script gets reloaded and it's workers restarted one at a
+     * time - defaults to false. Watched scripts need to check
+     * <code>JRuby::Rack::Worker.stop_requested?</code> for outdated workers
+     * to stop (otherwise the reload is aborted).
+     */
+    public static final String SCRIPT_WATCH_KEY = "jruby.worker.script.watch";
+
+    /**
+     * The thread count - how many worker (daemon) threads to create.
+     */
+    public static final String THREAD_COUNT_KEY = "jruby.worker.thread.count";
+
+    /**
+     * The thread priority - supported values: NORM, MIN, MAX and integers
+     * between 1 - 10.
+     *
+     * NOTE: thread settings might be configured per worker (script) using the
+     * worker id as a scope e.g. <code>jruby.worker.resque.thread.count</code>
+     * (or <code>jruby.worker.delayed_job.thread.priority</code>).
+     */
+    public static final String THREAD_PRIORITY_KEY = "jruby.worker.thread.priority";
+
+    /**
+     * The thread type - supported values: platform (default) and virtual.
+     * Virtual threads are only created on JDK 21+ (falls back to platform).
+     */
+    public static final String THREAD_TYPE_KEY = "jruby.worker.thread.type";
+
+    /**
+     * If the servlet logger must be used instead of the RackLogger.
+     */
+    public static final String FORCE_USE_SERVLET_LOGGER = "jruby.worker.logger.forceservlet";
+
+    /**
+     * Whether workers (for all configured scripts) should be started in
+     * parallel - runtimes are obtained and worker threads started concurrently
+     * instead of one by one (defaults to false).
+     */
+    public static final String STARTUP_PARALLEL_KEY = "jruby.worker.startup.parallel";
+
+    /**
+     * Limits how many workers are being started concurrently when the startup
+     * is parallel, defaults to the number of available processors.
+     */
+    public static final String STARTUP_CONCURRENCY_KEY = "jruby.worker.startup.concurrency";
+
+    /**
+     * The minimum/maximum worker thread count when auto-scaling, the minimum
+     * defaults to the thread count and the maximum to the minimum (no scaling).
+     * Might be scoped per worker e.g. <code>jruby.worker.resque.thread.max</code>.
+     */
+    public static final String THREAD_MIN_KEY = "jruby.worker.thread.min";
+    public static final String THREAD_MAX_KEY = "jruby.worker.thread.max";
+
+    /**
+     * Whether to auto-scale worker threads (between the configured min and
+     * max) based on the backlog reported by workers - defaults to false.
+     * @see BacklogProbe
+     */
+    public static final String AUTOSCALE_KEY = "jruby.worker.autoscale";
+
+    /**
+     * How often (in seconds) to check backlogs, defaults to 10.
+     */
+    public static final String AUTOSCALE_INTERVAL_KEY = "jruby.worker.autoscale.interval";
+
+    /**
+     * Minimum time (in seconds) between two scaling changes, defaults to 60.
+     */
+    public static final String AUTOSCALE_COOLDOWN_KEY = "jruby.worker.autoscale.cooldown";
+
+    /**
+     * Backlog per worker above which workers are added, defaults to 10.
+     */
+    public static final String AUTOSCALE_UP_KEY = "jruby.worker.autoscale.up";
+
+    /**
+     * Backlog per worker below which a worker is stopped, defaults to 1.
+     */
+    public static final String AUTOSCALE_DOWN_KEY = "jruby.worker.autoscale.down";
+
+    /**
+     * Whether workers that exit (return or fail) should be restarted (by a
+     * supervisor) - defaults to false.
+     */
+    public static final String RESTART_KEY = "jruby.worker.restart";
+
+    /**
+     * The restart budget - how many times a single worker gets restarted,
+     * defaults to 10 (a negative value means unlimited restarts).
+     */
+    public static final String RESTART_MAX_KEY = "jruby.worker.restart.max";
+
+    /**
+     * The initial restart delay (in milliseconds), doubles on each consecutive
+     * failure (with jitter) up to {@link #RESTART_DELAY_MAX_KEY}.
+     */
+    public static final String RESTART_DELAY_KEY = "jruby.worker.restart.delay";
+
+    /**
+     * The maximum restart delay (in milliseconds).
+     */
+    public static final String RESTART_DELAY_MAX_KEY = "jruby.worker.restart.delay.max";
+
+    /**
+     * Which runtime to restart a worker on - supported values: same (default)
+     * and fresh (a new runtime is obtained using {@link #getRuntime()}).
+     */
+    public static final String RESTART_RUNTIME_KEY = "jruby.worker.restart.runtime";
+
+    /**
+     * How long (in milliseconds) to wait for all workers to stop on shutdown,
+     * workers are signaled at once and share the deadline - defaults to 5000.
+     */
+    public static final String SHUTDOWN_TIMEOUT_KEY = "jruby.worker.shutdown.timeout";
+
+    /**
+     * Whether to raise an <code>Interrupt</code> in (Ruby) worker threads that
+     * did not stop within the shutdown timeout - defaults to false.
+     */
+    public static final String SHUTDOWN_ESCALATE_KEY = "jruby.worker.shutdown.escalate";
+
+    /**
+     * How long (in milliseconds) to wait for a (new) worker to get ready
+     * during a rolling restart - defaults to 60000.
+     * @see #restartWorkers(String, int)
+     */
+    public static final String READY_TIMEOUT_KEY = "jruby.worker.ready.timeout";
+
+    /**
+     * Whether to register (platform) MBeans for the manager and each of it's
+     * workers under the <code>org.kares.jruby</code> domain - defaults to true.
+     * @see WorkerManagerMBean
+     * @see RubyWorkerMBean
+     */
+    public static final String JMX_KEY = "jruby.worker.jmx";
+
+    protected static final String JMX_DOMAIN = "org.kares.jruby";
+
+    /**
+     * Whether workers should use runtimes from a dedicated pool instead of
+     * borrowing (and never returning) runtimes from JRuby-Rack's request pool
+     * (defaults to false).
+     */
+    public static final String RUNTIME_POOL_KEY = "jruby.worker.runtime.pool";
+
+    /**
+     * The number of worker runtimes to boot (in the background) on startup,
+     * defaults to the
+     * (total) thread count of all configured workers.
+     */
+    public static final String RUNTIME_POOL_MIN_KEY = "jruby.worker.runtime.pool.min";
+
+    /**
+     * The maximum number of worker runtimes (defaults to the minimum or the
+     * maximum auto-scaled thread count when {@link #AUTOSCALE_KEY} is on).
+     */
+    public static final String RUNTIME_POOL_MAX_KEY = "jruby.worker.runtime.pool.max";
+
+    /**
+     * How long (in seconds) a worker waits for a runtime from the pool (defaults to 120).
+     */
+    public static final String RUNTIME_POOL_TIMEOUT_KEY = "jruby.worker.runtime.pool.timeout";
+
+    /**
+     * How worker runtimes get booted, supported values: app (default) boots
+     * the application the same way as JRuby-Rack does for request runtimes,
+     * plain creates a runtime with the same configuration without loading the
+     * application (the worker script is expected to load what it needs).
+     */
+    public static final String RUNTIME_BOOT_KEY = "jruby.worker.runtime.boot";
+
+    /**
+     * The maximum number of (pending) jobs in an in-memory queue (used with
+     * <code>jruby.worker=inmemory</code>) - defaults to 10000.
+     * @see JobQueue
+     */
+    public static final String INMEMORY_CAPACITY_KEY = "jruby.worker.inmemory.capacity";
+
+    /**
+     * What to do once an in-memory queue is full - supported values: block
+     * (default, waits up to {@link #INMEMORY_OFFER_TIMEOUT_KEY}), reject and
+     * caller_runs (the job is performed by the enqueueing thread).
+     */
+    public static final String INMEMORY_OVERFLOW_KEY = "jruby.worker.inmemory.overflow";
+
+    /**
+     * How long (in milliseconds) to block enqueueing into a full in-memory
+     * queue before rejecting the job - defaults to 1000.
+     */
+    public static final String INMEMORY_OFFER_TIMEOUT_KEY = "jruby.worker.inmemory.offer.timeout";
+
+    /**
+     * Where to keep the job journal (used with <code>jruby.worker=journal</code>),
+     * relative paths resolve against {@link #getWorkDirectory()} - defaults to
+     * <code>jruby-worker-journal</code>.
+     * @see JobJournal
+     */
+    public static final String JOURNAL_DIR_KEY = "jruby.worker.journal.dir";
+
+    /**
+     * The size of a job journal segment (file) in bytes - defaults to 16MB.
+     */
+    public static final String JOURNAL_SEGMENT_SIZE_KEY = "jruby.worker.journal.segment.size";
+
+    /**
+     * By default a WorkerManager instance is exported with it's Ruby runtime.
+     * This is very useful to resolve configuration keys per runtime the same
+     * way the manager does (using {@link #getParameter(java.lang.String)}).
+     * check-out <code>jruby/rack/worker/env.rb</code>
+     */
+    protected static final String EXPORTED_NAME = "worker_manager";
+    private static final String GLOBAL_VAR_NAME = '$' + EXPORTED_NAME;
+
+    private boolean exported = true;
+
+    protected final WorkerRegistry workers = new WorkerRegistry();
+
+    private final WorkerMetrics metrics = new WorkerMetrics();
+
+    private final ScriptSourceCache scriptSources = new ScriptSourceCache(this);
+
+    private volatile boolean paused; // all workers
+    private final Lock pauseLock = new ReentrantLock();
+    private final Condition resumed = pauseLock.newCondition();
+
+    private final WorkNotifier workNotifier = new WorkNotifier();
+
+    private final ConcurrentHashMap<String, JobQueue> jobQueues = new ConcurrentHashMap<String, JobQueue>(4);
+    private JobJournal jobJournal;
+
+    private ObjectName objectName;
+    private final Map<RubyWorker, ObjectName> workerObjectNames = new ConcurrentHashMap<RubyWorker, ObjectName>(4);
+
+    /**
+     * Startup all workers.
+     */
+    public void startup() {
+        final List<WorkerScript> workerScripts = getWorkerScripts();
+
+        if (workerScripts.isEmpty()) {
+            final String message = "no worker script to execute - configure one using '" + SCRIPT_KEY + "' " +
+                            "or '" + SCRIPT_PATH_KEY + "' parameter (or see previous errors if already configured) ";
+            log("[" + getClass().getName() + "] " + message + " !");
+            return;
+        }
+
+        log("[" + getClass().getName() + "] located " + workerScripts.size() + " worker(s) configurations");
+
+        if ( isJmx() ) registerMBean();
+
+        for ( final WorkerScript workerScript : workerScripts ) {
+            final String workerId = workerScript.getId();
+            if ( workerId != null && "journal".equals(workerKey(workerId)) ) {
+                getJobJournal(); break; // replay before starting workers
+            }
+        }
+
+        if ( isParallelStartup() ) {
+            startupParallel(workerScripts);
+        }
+        else {
+            for (final WorkerScript workerScript:workerScripts) {
+                startup(workerScript);
+            }
+        }
+
+        if ( isAutoscale() ) startAutoscaler(workerScripts);
+        if ( isScriptWatch() ) startScriptWatcher(workerScripts);
+    }
+
+    private WorkerScriptWatcher scriptWatcher;
+
+    protected void startScriptWatcher(final List<WorkerScript> workerScripts) {
+        try {
+            WorkerScriptWatcher scriptWatcher = null;
+            for ( final WorkerScript workerScript : workerScripts ) {
+                final String path = workerScript.getFileName();
+                // only (custom) scripts read from a path, not built-in workers :
+                if ( path == null || workerScript.getScript() == null ) continue;
+                final File file = getFile(path);
+                if ( file == null || ! file.isFile() ) {
+                    log("[" + getClass().getName() + "] can not watch script: '" + path + "' (not a file on disk)");
+                    continue;
+                }
+                if ( scriptWatcher == null ) scriptWatcher = new WorkerScriptWatcher(this, 500);
+                scriptWatcher.watch(workerScript, file);
+                log("[" + getClass().getName() + "] watching script: " + file + " for changes");
+            }
+            if ( scriptWatcher != null ) {
+                scriptWatcher.start();
+                this.scriptWatcher = scriptWatcher;
+            }
+        }
+        catch (final IOException e) {
+            log("[" + getClass().getName() + "] failed to watch scripts", e);
+        }
+    }
+
+    /**
+     * Re-reads the script (from it's path) and if changed restarts it's workers
+     * one at a time (a replacement is started before a worker gets stopped).
+     * @param workerScript
+     */
+    protected void reloadWorkerScript(final WorkerScript workerScript) {
+        final String path = workerScript.getFileName();
+        final String script;
+        try {
+            script = scriptSources.load(path);
+        }
+        catch (final IOException e) {
+            log("[" + getClass().getName() + "] error reading script: '" + path + "'", e);
+            return;
+        }
+        if ( script == null || script.equals(workerScript.getScript()) ) return; // deleted or no change
+
+        workerScript.setScript(script);
+        log("[" + getClass().getName() + "] reloaded script: '" + path + "' restarting "
+            + getActiveWorkers(workerScript).size() + " worker(s)");
+        rollingRestart(workerScript, 0);
+    }
+
+    final Object restartLock = new Object(); // (auto-)scaling holds it as well
+
+    /**
+     * Replaces (running) workers of a script with new ones, in batches.
+     * @param scriptId the worker (script) id (null for a custom script)
+     * @param maxUnavailable how many workers might be stopped at once before
+     * their replacements are ready, 0 starts (a single) replacement first
+     * @return the number of workers replaced
+     */
+    @Override
+    public int restartWorkers(final String scriptId, final int maxUnavailable) {
+        for ( final WorkerScript workerScript : getActiveWorkerScripts() ) {
+            if ( equals(scriptId, workerScript.getId()) ) return rollingRestart(workerScript, maxUnavailable);
+        }
+        log("[" + getClass().getName() + "] no workers for: " + scriptId);
+        return 0;
+    }
+
+    /**
+     * A rolling restart - each batch of new workers needs to report ready
+     * before the next batch of outdated workers gets stopped.
+     * @param workerScript
+     * @param maxUnavailable
+     * @return the number of workers replaced
+     * @see #restartWorkers(String, int)
+     */
+    protected int rollingRestart(final WorkerScript workerScript, final int maxUnavailable) {
+        synchronized (restartLock) {
+            final List<RubyWorker> outdated = getActiveWorkers(workerScript);
+            final int batchSize = Math.max(1, maxUnavailable);
+            final long start = System.nanoTime();
+            log("[" + getClass().getName() + "] restarting " + outdated.size() + " worker(s) for: " + workerScript
+                + " (max unavailable: " + maxUnavailable + ")");
+
+            final ThreadFactory threadFactory = newThreadFactory(workerScript);
+            int restarted = 0;
+            for ( int i = 0; i < outdated.size(); i += batchSize ) {
+                final List<RubyWorker> batch = outdated.subList(i, Math.min(i + batchSize, outdated.size()));
+                if ( maxUnavailable > 0 ) {
+                    for ( final RubyWorker worker : batch ) {
+                        if ( ! stopWorker(worker, getShutdownTimeout()) ) {
+                            log("[" + getClass().getName() + "] ERROR: outdated worker " + worker + " for: " + workerScript
+                                + " did not stop (stopping restart after " + restarted + " worker(s))");
+                            return restarted;
+                        }
+                    }
+                }
+                final List<RubyWorker> replacements = new ArrayList<RubyWorker>(batch.size());
+                try {
+                    for ( int j = 0; j < batch.size(); j++ ) {
+                        replacements.add( startWorker(workerScript, threadFactory) );
+                    }
+                }
+                catch (final RuntimeException e) {
+                    log("[" + getClass().getName() + "] failed starting worker for: " + workerScript
+                        + " (stopping restart after " + restarted + " worker(s))", e);
+                    return restarted;
+                }
+                if ( ! awaitReady(replacements, getReadyTimeout()) ) {
+                    log("[" + getClass().getName() + "] new worker(s) for: " + workerScript + " not ready within "
+                        + getReadyTimeout() + "ms (stopping restart after " + restarted + " worker(s))");
+                    if ( maxUnavailable <= 0 ) { // outdated workers keep running - do not surge for good
+                        for ( final RubyWorker replacement : replacements ) {
+                            stopWorker(replacement, getShutdownTimeout());
+                        }
+                    }
+                    return restarted;
+                }
+                if ( maxUnavailable <= 0 ) {
+                    for ( int j = 0; j < batch.size(); j++ ) {
+                        final RubyWorker worker = batch.get(j);
+                        if ( ! stopWorker(worker, getShutdownTimeout()) ) {
+                            // do not keep running both the old and the new script version :
+                            log("[" + getClass().getName() + "] ERROR: outdated worker " + worker + " for: " + workerScript
+                                + " did not stop, keeping it (stopping restart after " + restarted + " worker(s))"
+                                + " - is it checking for stop requests ?");
+                            for ( final RubyWorker replacement : replacements.subList(j, replacements.size()) ) {
+                                stopWorker(replacement, getShutdownTimeout());
+                            }
+                            return restarted;
+                        }
+                    }
+                }
+                restarted += batch.size();
+            }
+            log("[" + getClass().getName() + "] restarted " + restarted + " worker(s) for: " + workerScript
+                + " in " + elapsedMillis(start) + "ms");
+            return restarted;
+        }
+    }
+
+    private boolean awaitReady(final List<RubyWorker> workers, final long timeout) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            for ( final RubyWorker worker : workers ) {
+                while ( ! worker.isReady() ) {
+                    final Thread workerThread = this.workers.getThread(worker);
+                    if ( workerThread == null || ! workerThread.isAlive() ) return false; // died
+                    final long remaining = deadline - System.nanoTime();
+                    if ( remaining <= 0 ) return false;
+                    worker.awaitReady(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(100)), TimeUnit.NANOSECONDS);
+                }
+            }
+            return true;
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stops a worker (cooperatively) and waits for it to exit.
+     * @param worker
+     * @param timeout (in milliseconds)
+     * @return true if stopped (and released) within the timeout
+     */
+    protected boolean stopWorker(final RubyWorker worker, final long timeout) {
+        final Thread workerThread = workers.getThread(worker);
+        if ( workerThread == null ) return false;
+        retireWorker(worker);
+        try {
+            workerThread.join(timeout);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if ( workerThread.isAlive() ) {
+            log("[" + getClass().getName() + "] worker " + worker + " did not stop within " + timeout + "ms");
+            return false;
+        }
+        if ( workers.remove(worker) != null ) {
+            unregisterMBean(worker);
+            releaseRuntime(worker.runtime);
+            log("[" + getClass().getName() + "] stopped worker: " + worker);
+        }
+        return true;
+    }
+
+    private WorkerAutoscaler autoscaler;
+
+    protected void startAutoscaler(final List<WorkerScript> workerScripts) {
+        final WorkerConfig config = getConfig();
+        final WorkerAutoscaler autoscaler = new WorkerAutoscaler(this,
+            config.getAutoscaleCooldown() * 1000L,
+            config.getAutoscaleUp(),
+            config.getAutoscaleDown()
+        );
+        for ( final WorkerScript workerScript : workerScripts ) {
+            final int min = getThreadMin(workerScript);
+            final int max = getThreadMax(workerScript);
+            log("[" + getClass().getName() + "] auto-scaling " + min + " - " + max + " worker(s) for: " + workerScript);
+            autoscaler.add(workerScript, min, max);
+        }
+        autoscaler.start( config.getAutoscaleInterval() * 1000L );
+        this.autoscaler = autoscaler;
+    }
+
+    protected void startup(final WorkerScript workerScript)
+    {
+        final int workersCount = getThreadCount(workerScript);
+        log("[" + getClass().getName() + "] starting " + workersCount + " worker(s) for: " + workerScript);
+
+        final ThreadFactory threadFactory = newThreadFactory(workerScript);
+        for ( int i = 0; i < workersCount; i++ ) {
+            final long start = System.nanoTime();
+            final Ruby runtime;
+            try {
+                runtime = getRuntime(); // handles DefaultErrorApplication.getRuntime
+            }
+            catch (final UnsupportedOperationException e) { // error happened during JRuby-Rack startup
+                log("[" + getClass().getName() + "] failed to obtain (Ruby) runtime");
+                break;
+            }
+
+            try {
+                startWorker(workerScript, runtime, threadFactory, start);
+            }
+            catch (final Exception e) {
+                log("[" + getClass().getName() + "] worker startup failed", e);
+                break;
+            }
+        }
+
+        log("[" + getClass().getName() + "] started " + workersCount + " worker(s) for: " + workerScript
+            + " - Total active workers: " + workers.size());
+    }
+
+    /**
+     * Starts workers for all the given scripts at once, obtaining runtimes and
+     * starting worker threads concurrently (limited by {@link #getStartupConcurrency()}).
+     *
+     * Fails the same way as a sequential startup does: once a (Ruby) runtime
+     * can not be obtained (e.g. JRuby-Rack returned an error application) no
+     * more workers are started, while an {@link IllegalStateException} is
+     * propagated to the caller.
+     *
+     * @param workerScripts
+     */
+    protected void startupParallel(final List<WorkerScript> workerScripts)
+    {
+        final int concurrency = getStartupConcurrency();
+        final long start = System.nanoTime();
+
+        final List<Callable<RubyWorker>> tasks = new ArrayList<Callable<RubyWorker>>();
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        for ( final WorkerScript workerScript : workerScripts ) {
+            final int workersCount = getThreadCount(workerScript);
+            log("[" + getClass().getName() + "] starting " + workersCount + " worker(s) for: " + workerScript
+                + " (in parallel)");
+
+            final ThreadFactory threadFactory = newThreadFactory(workerScript);
+            for ( int i = 0; i < workersCount; i++ ) {
+                tasks.add(new Callable<RubyWorker>() {
+
+                    @Override
+                    public RubyWorker call() throws Exception {
+                        if ( failed.get() ) return null;
+                        final long start = System.nanoTime();
+                        final Ruby runtime;
+                        try {
+                            runtime = getRuntime(); // handles DefaultErrorApplication.getRuntime
+                        }
+                        catch (final UnsupportedOperationException e) { // error during JRuby-Rack startup
+                            if ( failed.compareAndSet(false, true) ) {
+                                log("[" + getClass().getName() + "] failed to obtain (Ruby) runtime");
+                            }
+                            return null;
+                        }
+                        catch (final RuntimeException e) {
+                            failed.set(true); throw e;
+                        }
+                        if ( failed.get() ) return null; // NOTE: runtime might have been booted meanwhile
+                        try {
+                            return startWorker(workerScript, runtime, threadFactory, start);
+                        }
+                        catch (final RuntimeException e) {
+                            failed.set(true); throw e;
+                        }
+                    }
+
+                });
+            }
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(concurrency, tasks.size())), newStartupThreadFactory()
+        );
+        int started = 0;
+        RuntimeException failure = null;
+        try {
+            for ( final Future<RubyWorker> result : executor.invokeAll(tasks) ) {
+                try {
+                    if ( result.get() != null ) started++;
+                }
+                catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if ( cause instanceof IllegalStateException ) {
+                        if ( failure == null ) failure = (IllegalStateException) cause;
+                    }
+                    else if ( cause instanceof Error ) {
+                        throw (Error) cause;
+                    }
+                    else {
+                        log("[" + getClass().getName() + "] worker startup failed", (Exception) cause);
+                    }
+                }
+            }
+        }
+        catch (final InterruptedException e) {
+            log("[" + getClass().getName() + "] interrupted");
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        if ( failure != null ) throw failure;
+
+        log("[" + getClass().getName() + "] started " + started + " worker(s) in parallel for: " + workerScripts
+            + " in " + elapsedMillis(start) + "ms - Total active workers: " + workers.size());
+    }
+
+    /**
+     * Starts a single worker thread for the given script using the runtime.
+     *
+     * @param workerScript
+     * @param runtime
+     * @param threadFactory
+     * @param start (nano) time when the worker startup (obtaining the runtime) started
+     * @return the started worker
+     */
+    protected RubyWorker startWorker(final WorkerScript workerScript, final Ruby runtime,
+        final ThreadFactory threadFactory, final long start) {
+        exportTo(runtime);
+        final RubyWorker worker = newRubyWorker(runtime, workerScript.getScript(), workerScript.getFileName());
+        worker.setWorkerScript(workerScript);
+        final Runnable task = isRestartWorkers() ? newWorkerSupervisor(worker) : worker;
+        final Thread workerThread = threadFactory.newThread(task);
+        workers.register(worker, workerThread);
+        if ( objectName != null ) registerMBean(worker, workerThread);
+        workerThread.start();
+        log("[" + getClass().getName() + "] started worker for: " + workerScript + " in " + elapsedMillis(start) + "ms");
+        return worker;
+    }
+
+    protected void exportTo(final Ruby runtime) {
+        if ( isExported() ) {
+            runtime.getGlobalVariables().set(GLOBAL_VAR_NAME, JavaEmbedUtils.javaToRuby(runtime, this));
+        }
+    }
+
+    /**
+     * Only done on shutdown - a (stopped) worker's runtime might be shared by
+     * other workers (threadsafe or pooled runtimes) that still need the manager.
+     * @param runtime
+     */
+    protected void unexportFrom(final Ruby runtime) {
+        if ( isExported() ) {
+            runtime.getGlobalVariables().clear(GLOBAL_VAR_NAME);
+        }
+    }
+
+    /**
+     * Obtains a runtime and starts a single worker for the given script.
+     *
+     * @param workerScript
+     * @param threadFactory
+     * @return the started worker
+     */
+    protected RubyWorker startWorker(final WorkerScript workerScript, final ThreadFactory threadFactory) {
+        final long start = System.nanoTime();
+        return startWorker(workerScript, getRuntime(), threadFactory, start);
+    }
+
+    /**
+     * Requests a worker to stop (cooperatively) - the worker is expected to
+     * check {@link #isStopRequested()} and exit it's loop, it's released once
+     * it's thread terminates.
+     * @param worker
+     */
+    protected void retireWorker(final RubyWorker worker) {
+        log("[" + getClass().getName() + "] retiring worker: " + worker);
+        worker.stop();
+        signalResumed(); // in case it's paused
+        workNotifier.wakeAll(); // or idle
+        for ( final JobQueue jobQueue : jobQueues.values() ) jobQueue.wakeAll();
+        final JobJournal jobJournal = getOpenedJobJournal();
+        if ( jobJournal != null ) jobJournal.wakeAll();
+    }
+
+    /**
+     * Removes (retired) workers that have been stopped and are no longer running.
+     */
+    protected void reapWorkers() {
+        for ( final WorkerRegistry.Entry entry : workers.getEntries() ) {
+            final RubyWorker worker = entry.getWorker();
+            if ( worker.isStopped() && ! entry.getThread().isAlive() ) {
+                if ( ! removeWorker(worker) ) continue; // shutting down
+                log("[" + getClass().getName() + "] stopped worker: " + worker);
+            }
+        }
+    }
+
+    /**
+     * Unregisters a worker that is done running and releases it's runtime.
+     * @param worker
+     * @return false if the worker has already been removed (e.g. on shutdown)
+     */
+    boolean removeWorker(final RubyWorker worker) {
+        if ( workers.remove(worker) == null ) return false;
+        unregisterMBean(worker);
+        releaseRuntime(worker.runtime);
+        return true;
+    }
+
+    /**
+     * @param workerScript
+     * @return workers (for the given script) that are running and not stopping
+     */
+    public List<RubyWorker> getActiveWorkers(final WorkerScript workerScript) {
+        final List<RubyWorker> active = new ArrayList<RubyWorker>();
+        for ( final WorkerRegistry.Entry entry : workers.getEntries() ) {
+            if ( entry.getWorkerScript() == workerScript && entry.isActive() ) {
+                active.add(entry.getWorker());
+            }
+        }
+        return active;
+    }
+
+    /**
+     * @return the worker on the current thread (marked as ready) or null
+     */
+    private static RubyWorker currentWorker() {
+        final RubyWorker worker = RubyWorker.current();
+        // a worker calling back (e.g. checking whether to stop) made it into it's loop
+        if ( worker != null ) worker.ready();
+        return worker;
+    }
+
+    /**
+     * Meant to be called from a (Ruby) worker once it's ready to process jobs,
+     * built-in workers are considered ready once they check whether to stop
+     * (or pause) or report a job.
+     */
+    public void workerReady() {
+        currentWorker();
+    }
+
+    /**
+     * Meant to be called from a (Ruby) worker loop to check whether it
+     * should stop e.g. <code>break if $worker_manager.isStopRequested</code>
+     * @return true if the worker on the current thread has been asked to stop
+     */
+    public boolean isStopRequested() {
+        final RubyWorker worker = currentWorker();
+        return worker != null && worker.isStopped();
+    }
+
+    /**
+     * Meant to be called from a (Ruby) worker to register a backlog probe for
+     * it's worker (script), used when auto-scaling.
+     * @param probe
+     */
+    public void setBacklogProbe(final BacklogProbe probe) {
+        final RubyWorker worker = currentWorker();
+        final WorkerScript workerScript = worker == null ? null : worker.getWorkerScript();
+        if ( workerScript == null ) {
+            log("[" + getClass().getName() + "] ignoring backlog probe (not set from a worker thread)");
+            return;
+        }
+        workerScript.setBacklogProbe(probe);
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @param scriptId
+     * @return whether workers for the given script (id) are paused
+     */
+    public boolean isPaused(final String scriptId) {
+        if ( paused ) return true;
+        for ( final WorkerScript workerScript : getActiveWorkerScripts() ) {
+            if ( equals(scriptId, workerScript.getId()) && workerScript.isPaused() ) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void pauseAll() {
+        paused = true;
+        log("[" + getClass().getName() + "] pausing all workers");
+    }
+
+    @Override
+    public void resumeAll() {
+        paused = false;
+        for ( final WorkerScript workerScript : getActiveWorkerScripts() ) workerScript.setPaused(false);
+        log("[" + getClass().getName() + "] resuming all workers");
+        signalResumed();
+    }
+
+    @Override
+    public void pause(final String scriptId) {
+        setPaused(scriptId, true);
+    }
+
+    @Override
+    public void resume(final String scriptId) {
+        setPaused(scriptId, false);
+    }
+
+    private void setPaused(final String scriptId, final boolean paused) {
+        int count = 0;
+        for ( final WorkerScript workerScript : getActiveWorkerScripts() ) {
+            if ( equals(scriptId, workerScript.getId()) ) {
+                workerScript.setPaused(paused); count++;
+            }
+        }
+        if ( count == 0 ) {
+            log("[" + getClass().getName() + "] no workers for: " + scriptId);
+            return;
+        }
+        log("[" + getClass().getName() + "] " + ( paused ? "pausing" : "resuming" ) + " workers for: " + scriptId);
+        if ( ! paused ) signalResumed();
+    }
+
+    private List<WorkerScript> getActiveWorkerScripts() {
+        final List<WorkerScript> workerScripts = new ArrayList<WorkerScript>();
+        for ( final WorkerRegistry.Entry entry : workers.getEntries() ) {
+            final WorkerScript workerScript = entry.getWorkerScript();
+            if ( workerScript != null && ! workerScripts.contains(workerScript) ) {
+                workerScripts.add(workerScript);
+            }
+        }
+        return workerScripts;
+    }
+
+    private static boolean equals(final String id1, final String id2) {
+        return id1 == null ? id2 == null : id1.equals(id2);
+    }
+
+    /**
+     * Meant to be called from a (Ruby) worker loop in between jobs.
+     * @return true if the worker on the current thread should pause
+     */
+    public boolean isPauseRequested() {
+        final RubyWorker worker = currentWorker();
+        return worker != null && isPauseRequested(worker);
+    }
+
+    private boolean isPauseRequested(final RubyWorker worker) {
+        if ( worker.isStopped() ) return false;
+        if ( paused ) return true;
+        final WorkerScript workerScript = worker.getWorkerScript();
+        return workerScript != null && workerScript.isPaused();
+    }
+
+    /**
+     * Meant to be called from a (Ruby) worker loop in between jobs, blocks
+     * the current (worker) thread while it's paused.
+     * @return false if the worker should stop (or got interrupted) instead
+     */
+    public boolean awaitResume() {
+        final RubyWorker worker = currentWorker();
+        if ( worker == null || ! isPauseRequested(worker) ) return worker == null || ! worker.isStopped();
+
+        pauseLock.lock();
+        try {
+            worker.paused(true);
+            while ( isPauseRequested(worker) ) resumed.await();
+            return ! worker.isStopped();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally {
+            worker.paused(false);
+            pauseLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up idle workers polling the given queue, meant to be called once
+     * a job gets enqueued (e.g. from a request) :
+     * <code>$worker_manager.notify_work('mailers')</code>
+     * @param queue the queue name or null to wake up all (idle) workers
+     */
+    public void notifyWork(final String queue) {
+        workNotifier.notifyWork(queue);
+    }
+
+    /**
+     * Wakes up all idle workers.
+     * @see #notifyWork(String)
+     */
+    public void notifyWork() {
+        notifyWork(null);
+    }
+
+    /**
+     * @param queues
+     * @return the current work notification generation for the given queues
+     * @see #awaitWork(String[], long, long)
+     */
+    public long getWorkGeneration(final String[] queues) {
+        return workNotifier.getGeneration(queues);
+    }
+
+    /**
+     * Meant to be called from a (Ruby) worker loop instead of sleeping when
+     * there are no jobs, blocks the current (worker) thread until work gets
+     * notified (since the given generation) or the timeout elapses.
+     * @param queues the queues the worker polls (null for all)
+     * @param since a generation taken before polling or a negative value
+     * @param timeout max time to wait (in milliseconds)
+     * @return true if work got notified, false on timeout or when the worker
+     * should stop (or got interrupted)
+     */
+    public boolean awaitWork(final String[] queues, final long since, final long timeout) {
+        final RubyWorker worker = currentWorker();
+        if ( worker != null && worker.isStopped() ) return false;
+        try {
+            return workNotifier.awaitWork(queues, since, timeout);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void signalResumed() {
+        pauseLock.lock();
+        try {
+            resumed.signalAll();
+        }
+        finally {
+            pauseLock.unlock();
+        }
+    }
+
+    /**
+     * Meant to be called from a (Ruby) worker before it starts processing a job.
+     */
+    public void jobStarted() {
+        final RubyWorker worker = currentWorker();
+        if ( worker != null ) worker.jobStarted();
+    }
+
+    /**
+     * Meant to be called from a (Ruby) worker once it processed a job.
+     * @param success whether the job succeeded
+     */
+    public void jobCompleted(final boolean success) {
+        final RubyWorker worker = currentWorker();
+        if ( worker != null ) worker.jobCompleted(success);
+        metrics.jobCompleted(success);
+    }
+
+    /**
+     * Registers this manager's MBean (a failure to do so is only logged).
+     */
+    protected void registerMBean() {
+        if ( objectName != null ) return;
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final String prefix = getThreadPrefix();
+            final String name = prefix == null || prefix.length() == 0 ? "jruby-rack-worker" : prefix;
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=WorkerManager,name=" + ObjectName.quote(name));
+            if ( server.isRegistered(objectName) ) { // e.g. un-named applications
+                final String uniqueName = name + '@' + Integer.toHexString(System.identityHashCode(this));
+                objectName = new ObjectName(JMX_DOMAIN + ":type=WorkerManager,name=" + ObjectName.quote(uniqueName));
+            }
+            server.registerMBean(new StandardMBean(this, WorkerManagerMBean.class), objectName);
+            this.objectName = objectName;
+        }
+        catch (final JMException e) {
+            log("[" + getClass().getName() + "] failed to register MBean: " + e);
+        }
+    }
+
+    protected void registerMBean(final RubyWorker worker, final Thread workerThread) {
+        try {
+            final String name = workerThread.getName().length() > 0 ? workerThread.getName() :
+                "worker@" + Integer.toHexString(System.identityHashCode(worker));
+            final ObjectName workerName = new ObjectName(objectName.getCanonicalName() + ",worker=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(worker, RubyWorkerMBean.class), workerName);
+            workerObjectNames.put(worker, workerName);
+        }
+        catch (final JMException e) {
+            log("[" + getClass().getName() + "] failed to register MBean for worker " + worker + ": " + e);
+        }
+    }
+
+    protected void unregisterMBean() {
+        final ObjectName objectName = this.objectName;
+        if ( objectName == null ) return;
+        this.objectName = null;
+        for ( final RubyWorker worker : workerObjectNames.keySet() ) unregisterMBean(worker);
+        unregisterMBean(objectName);
+    }
+
+    protected void unregisterMBean(final RubyWorker worker) {
+        final ObjectName workerName = workerObjectNames.remove(worker);
+        if ( workerName != null ) unregisterMBean(workerName);
+    }
+
+    private void unregisterMBean(final ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        catch (final JMException e) {
+            log("[" + getClass().getName() + "] failed to unregister MBean " + objectName + ": " + e);
+        }
+    }
+
+    /**
+     * @return the (registered) MBean name or null
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    private static long elapsedMillis(final long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Shutdown all (managed) workers.
+     *
+     * All workers are signaled to stop at once and waited for until a (single)
+     * deadline passes, workers that did not make it are reported (and raised
+     * an interrupt in if {@link #isShutdownEscalate()}).
+     */
+    public void shutdown() {
+        if ( scriptWatcher != null ) {
+            scriptWatcher.stop(); scriptWatcher = null;
+        }
+        if ( autoscaler != null ) {
+            autoscaler.stop(); autoscaler = null;
+        }
+        final Map<RubyWorker, Thread> workers = new LinkedHashMap<RubyWorker, Thread>();
+        for ( final WorkerRegistry.Entry entry : this.workers.removeAll() ) {
+            workers.put(entry.getWorker(), entry.getThread());
+        }
+
+        final long timeout = getShutdownTimeout();
+        final long start = System.nanoTime();
+        for ( final Map.Entry<RubyWorker, Thread> entry : workers.entrySet() ) {
+            log("[" + getClass().getName() + "] stopping worker: " + entry.getKey());
+            entry.getKey().stop();
+            // JRuby seems to ignore Java's interrupt arithmetic
+            // @see http://jira.codehaus.org/browse/JRUBY-4135
+            entry.getValue().interrupt();
+        }
+        signalResumed(); // paused workers
+        workNotifier.wakeAll(); // idle workers
+        for ( final JobQueue jobQueue : jobQueues.values() ) jobQueue.wakeAll();
+        final JobJournal jobJournal = getOpenedJobJournal();
+        if ( jobJournal != null ) jobJournal.wakeAll();
+
+        Map<RubyWorker, Thread> alive = awaitTermination(workers, start + TimeUnit.MILLISECONDS.toNanos(timeout));
+        if ( ! alive.isEmpty() ) {
+            for ( final Map.Entry<RubyWorker, Thread> entry : alive.entrySet() ) {
+                log("[" + getClass().getName() + "] worker " + entry.getKey() + " did not stop within " + timeout + "ms"
+                    + stackTrace(entry.getValue()));
+            }
+            if ( isShutdownEscalate() ) {
+                for ( final Map.Entry<RubyWorker, Thread> entry : alive.entrySet() ) {
+                    escalateShutdown(entry.getKey(), entry.getValue());
+                }
+                alive = awaitTermination(alive, System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+
+        for ( final RubyWorker worker : workers.keySet() ) {
+            try {
+                unregisterMBean(worker);
+                if ( alive.containsKey(worker) ) { // still running - do not hand it's runtime out
+                    log("[" + getClass().getName() + "] leaking worker thread: " + alive.get(worker).getName()
+                        + " (and it's runtime: " + worker.runtime + ")");
+                    continue;
+                }
+                unexportFrom(worker.runtime);
+                releaseRuntime(worker.runtime);
+                log("[" + getClass().getName() + "] stopped worker: " + worker);
+            }
+            catch (final Exception e) {
+                log("[" + getClass().getName() + "] ignoring exception " + e);
+            }
+        }
+
+        for ( final JobQueue jobQueue : jobQueues.values() ) {
+            final int pending = jobQueue.clear(); // in-memory jobs do not survive
+            if ( pending > 0 ) {
+                log("[" + getClass().getName() + "] discarded " + pending + " pending job(s) from in-memory queue: " + jobQueue.getName());
+            }
+        }
+        synchronized (this) {
+            if ( this.jobJournal != null ) {
+                this.jobJournal.close(); // pending (and reserved) jobs get replayed
+                log("[" + getClass().getName() + "] closed job journal with " +
+                    ( this.jobJournal.size() + this.jobJournal.getReservedSize() ) + " pending job(s)");
+                this.jobJournal = null;
+            }
+        }
+
+        unregisterMBean();
+        log("[" + getClass().getName() + "] stopped " + ( workers.size() - alive.size() ) + " worker(s) in "
+            + elapsedMillis(start) + "ms" + ( alive.isEmpty() ? "" : " (" + alive.size() + " did not stop)" ));
+    }
+
+    /**
+     * @param workers
+     * @param deadline (nano) time
+     * @return workers whose threads are still alive after the deadline
+     */
+    private Map<RubyWorker, Thread> awaitTermination(final Map<RubyWorker, Thread> workers, final long deadline) {
+        final Map<RubyWorker, Thread> alive = new HashMap<RubyWorker, Thread>();
+        boolean interrupted = false;
+        for ( final Map.Entry<RubyWorker, Thread> entry : workers.entrySet() ) {
+            final Thread workerThread = entry.getValue();
+            final long remaining = deadline - System.nanoTime();
+            if ( ! interrupted && remaining > 0 ) {
+                try {
+                    TimeUnit.NANOSECONDS.timedJoin(workerThread, remaining);
+                }
+                catch (final InterruptedException e) {
+                    log("[" + getClass().getName() + "] interrupted");
+                    interrupted = true; // do not wait any longer
+                }
+            }
+            if ( workerThread.isAlive() ) alive.put(entry.getKey(), workerThread);
+        }
+        if ( interrupted ) Thread.currentThread().interrupt();
+        return alive;
+    }
+
+    private static String stackTrace(final Thread thread) {
+        final StringBuilder trace = new StringBuilder();
+        trace.append(" - thread \"").append(thread.getName()).append("\" ").append(thread.getState());
+        for ( final StackTraceElement element : thread.getStackTrace() ) {
+            trace.append("\n\tat ").append(element);
+        }
+        return trace.toString();
+    }
+
+    /**
+     * Raises an <code>Interrupt</code> in the (Ruby) thread of a worker that
+     * failed to stop in time.
+     * @param worker
+     * @param workerThread
+     */
+    protected void escalateShutdown(final RubyWorker worker, final Thread workerThread) {
+        final Ruby runtime = worker.getRuntime();
+        final RubyThread rubyThread = worker.getRubyThread();
+        if ( rubyThread == null ) {
+            log("[" + getClass().getName() + "] no Ruby thread found for worker " + worker);
+            return;
+        }
+        log("[" + getClass().getName() + "] raising Interrupt in worker " + worker);
+        // raising needs a (Ruby) thread context - use a short-lived thread
+        // instead of adopting the calling (container) thread into the runtime :
+        final String prefix = getThreadPrefix();
+        final Thread raiser = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                final ThreadContext context = runtime.getCurrentContext();
+                try {
+                    rubyThread.raise(context, new IRubyObject[] {
+                        runtime.getInterrupt(), runtime.newString("worker shutdown timed out")
+                    }, Block.NULL_BLOCK);
+                }
+                catch (final RuntimeException e) {
+                    log("[" + WorkerManager.this.getClass().getName() + "] failed raising Interrupt in worker " + worker + ": " + e);
+                }
+                finally {
+                    runtime.getThreadService().unregisterCurrentThread(context);
+                }
+            }
+
+        }, ( prefix == null || prefix.length() == 0 ? "" : prefix + '-' ) + "jruby-rack-worker-escalation");
+        raiser.setDaemon(true);
+        raiser.start();
+        try {
+            raiser.join(1000);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This shall be implemented by concrete classes and should return an
+     * (initialized) JRuby runtime ready to be used by a worker.
+     * 
+     * By default this method is expected to be called as many times as the
+     * configured worker count, thus shall return the same runtime only if
+     * it's thread-safe !
+     * @return a Ruby runtime
+     */
+    protected abstract Ruby getRuntime() ;
+
+    /**
+     * Called once a worker is stopped with the runtime previously returned
+     * from {@link #getRuntime()}. Does nothing by default (the runtime is not
+     * torn down as the manager did not create it).
+     * @param runtime
+     */
+    protected void releaseRuntime(final Ruby runtime) {
+        // NOOP
+    }
+
+    // ----------------------------------------
+    // configuration
+    // ----------------------------------------
+
+    private final AtomicReference<WorkerConfig> config = new AtomicReference<WorkerConfig>();
+    private final List<WorkerConfigListener> configListeners = new CopyOnWriteArrayList<WorkerConfigListener>();
+
+    /**
+     * @return the current configuration (resolved on first access)
+     */
+    public WorkerConfig getConfig() {
+        final WorkerConfig config = this.config.get();
+        if ( config != null ) return config;
+        final WorkerConfig newConfig = newConfig();
+        if ( this.config.compareAndSet(null, newConfig) ) {
+            logWarnings(newConfig);
+            return newConfig;
+        }
+        return this.config.get(); // resolved concurrently
+    }
+
+    /**
+     * Re-resolves all parameters, listeners get notified after the new
+     * configuration is swapped in (explicitly set properties still apply).
+     */
+    @Override
+    public void reloadConfig() {
+        final WorkerConfig newConfig = newConfig();
+        final WorkerConfig previous = this.config.getAndSet(newConfig);
+        logWarnings(newConfig);
+        log("[" + getClass().getName() + "] reloaded configuration");
+        if ( previous == null ) return;
+        for ( final WorkerConfigListener listener : configListeners ) {
+            try {
+                listener.configChanged(previous, newConfig);
+            }
+            catch (final RuntimeException e) {
+                log("[" + getClass().getName() + "] configuration listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    public void addConfigListener(final WorkerConfigListener listener) {
+        configListeners.add(listener);
+    }
+
+    public void removeConfigListener(final WorkerConfigListener listener) {
+        configListeners.remove(listener);
+    }
+
+    protected WorkerConfig newConfig() {
+        return new WorkerConfig(this);
+    }
+
+    private void logWarnings(final WorkerConfig config) {
+        for ( final String warning : config.getWarnings() ) {
+            log("[" + getClass().getName() + "] " + warning);
+        }
+    }
+
+    // ----------------------------------------
+    // properties
+    // ----------------------------------------
+
+    private String threadPrefix;
+
+    public String getThreadPrefix() {
+        return threadPrefix;
+    }
+
+    public void setThreadPrefix(final String threadPrefix) {
+        this.threadPrefix = threadPrefix;
+    }
+
+    /**
+     * @return the registry of (currently) managed workers
+     */
+    public WorkerRegistry getWorkerRegistry() {
+        return workers;
+    }
+
+    /**
+     * @return (shared) worker id registrations used by Ruby adapters (Resque)
+     */
+    public WorkerIdRegistry getWorkerIdRegistry() {
+        return WorkerIdRegistry.getInstance();
+    }
+
+    public WorkNotifier getWorkNotifier() {
+        return workNotifier;
+    }
 
     /**
-     * The built-in worker to use.
-     *
-     * <context-param>
-     *   <param-name>jruby.worker</param-name>
-     *   <param-value>Delayed::Job</param-value>
-     * </context-param>
+     * Jobs (Ruby objects) are only handed over as is to workers if they all
+     * run on the runtime the jobs are enqueued from.
+     * @param runtime
+     * @return true if (there are workers and) all workers use the runtime
      */
-    public static final String WORKER_KEY = "jruby.worker";
+    public boolean isSharedRuntime(final Ruby runtime) {
+        boolean shared = false;
+        for ( final RubyWorker worker : workers.getWorkers() ) {
+            if ( worker.runtime != runtime ) return false;
+            shared = true;
+        }
+        return shared;
+    }
 
     /**
-     * The worker script to execute (should be a loop of some kind).
-     * For scripts included in a separate file use {@link #SCRIPT_PATH_KEY}.
-     *
-     * <context-param>
-     *   <param-name>jruby.worker.script</param-name>
-     *   <param-value>
-     *      require 'delayed/jruby_worker'
-     *      Delayed::JRubyWorker.new(:quiet => false).start
-     *   </param-value>
-     * </context-param>
+     * @param name the queue name
+     * @return an in-memory job queue (created on first access)
+     * @see #INMEMORY_CAPACITY_KEY
      */
-    public static final String SCRIPT_KEY = "jruby.worker.script";
+    public JobQueue getJobQueue(final String name) {
+        JobQueue jobQueue = jobQueues.get(name);
+        if ( jobQueue == null ) {
+            final WorkerConfig config = getConfig();
+            final JobQueue newQueue = new JobQueue(name, config.getInmemoryCapacity(),
+                config.getInmemoryOverflow(), config.getInmemoryOfferTimeout());
+            jobQueue = jobQueues.putIfAbsent(name, newQueue);
+            if ( jobQueue == null ) jobQueue = newQueue;
+        }
+        return jobQueue;
+    }
 
     /**
-     * Path to the worker script to be executed - the script will be parsed
-     * and executed as a string thus don't rely on features such as __FILE__ !
-     *
-     * <context-param>
-     *   <param-name>jruby.worker.script.path</param-name>
-     *   <param-value>lib/delayed/jruby_worker.rb</param-value>
-     * </context-param>
+     * @return the (durable) job journal, opened (and replayed) on first access
+     * @throws IllegalStateException if the journal can not be opened
+     * @see #JOURNAL_DIR_KEY
      */
-    public static final String SCRIPT_PATH_KEY = "jruby.worker.script.path";
+    public synchronized JobJournal getJobJournal() throws IllegalStateException {
+        if ( jobJournal == null ) {
+            final WorkerConfig config = getConfig();
+            File directory = new File(config.getJournalDir());
+            if ( ! directory.isAbsolute() ) directory = new File(getWorkDirectory(), config.getJournalDir());
+            final JobJournal jobJournal = new JobJournal(directory, config.getJournalSegmentSize());
+            final long start = System.nanoTime();
+            final int replayed;
+            try {
+                replayed = jobJournal.open();
+            }
+            catch (final IOException e) {
+                throw new IllegalStateException("failed to open job journal: " + directory, e);
+            }
+            log("[" + getClass().getName() + "] opened job journal " + directory + " (replayed " + replayed +
+                " pending job(s)) in " + elapsedMillis(start) + "ms");
+            this.jobJournal = jobJournal;
+        }
+        return jobJournal;
+    }
+
+    private synchronized JobJournal getOpenedJobJournal() {
+        return jobJournal;
+    }
 
     /**
-     * The thread count - how many worker (daemon) threads to create.
+     * @return a directory for (temporary) files e.g. the job journal
      */
-    public static final String THREAD_COUNT_KEY = "jruby.worker.thread.count";
+    protected File getWorkDirectory() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
 
     /**
-     * The thread priority - supported values: NORM, MIN, MAX and integers
-     * between 1 - 10.
+     * @return in-memory job queues created so far
      */
-    public static final String THREAD_PRIORITY_KEY = "jruby.worker.thread.priority";
+    public List<JobQueue> getJobQueues() {
+        return new ArrayList<JobQueue>(jobQueues.values());
+    }
 
     /**
-     * If the servlet logger must be used instead of the RackLogger.
+     * @return job reservations shared by all workers (used by Ruby adapters)
      */
-    public static final String FORCE_USE_SERVLET_LOGGER = "jruby.worker.logger.forceservlet";
+    public JobReservations getJobReservations() {
+        return JobReservations.getInstance();
+    }
 
     /**
-     * By default a WorkerManager instance is exported with it's Ruby runtime.
-     * This is very useful to resolve configuration keys per runtime the same
-     * way the manager does (using {@link #getParameter(java.lang.String)}).
-     * check-out <code>jruby/rack/worker/env.rb</code>
+     * @return host name and process liveness (used by Ruby adapters)
      */
-    protected static final String EXPORTED_NAME = "worker_manager";
-    private static final String GLOBAL_VAR_NAME = '$' + EXPORTED_NAME;
+    public ProcessInfo getProcessInfo() {
+        return ProcessInfo.getInstance();
+    }
 
-    private boolean exported = true;
+    @Override
+    public int getWorkerCount() {
+        return workers.size();
+    }
 
-    protected final Map<RubyWorker, Thread> workers = new HashMap<RubyWorker, Thread>(4);
+    @Override
+    public int getActiveWorkerCount() {
+        int count = 0;
+        for ( final WorkerRegistry.Entry entry : workers.getEntries() ) {
+            if ( entry.isActive() ) count++;
+        }
+        return count;
+    }
 
     /**
-     * Startup all workers.
+     * @return job metrics (for all workers)
      */
-    public void startup() {
-        final List<WorkerScript> workerScripts = getWorkerScripts();
+    public WorkerMetrics getMetrics() {
+        return metrics;
+    }
 
-        if (workerScripts.isEmpty()) {
-            final String message = "no worker script to execute - configure one using '" + SCRIPT_KEY + "' " +
-                            "or '" + SCRIPT_PATH_KEY + "' parameter (or see previous errors if already configured) ";
-            log("[" + getClass().getName() + "] " + message + " !");
-            return;
-        }
+    @Override
+    public long getJobsProcessed() {
+        return metrics.getJobsProcessed();
+    }
 
-        log("[" + getClass().getName() + "] located " + workerScripts.size() + " worker(s) configurations");
+    @Override
+    public long getJobsFailed() {
+        return metrics.getJobsFailed();
+    }
 
-        for (final WorkerScript workerScript:workerScripts) {
-            startup(workerScript);
-        }
+    @Override
+    public double getOneMinuteRate() {
+        return metrics.getOneMinuteRate();
     }
 
-    protected void startup(final WorkerScript workerScript)
-    {
-        final int workersCount = getThreadCount();
-        log("[" + getClass().getName() + "] starting " + workersCount + " worker(s) for: " + workerScript);
+    @Override
+    public double getFiveMinuteRate() {
+        return metrics.getFiveMinuteRate();
+    }
 
-        final ThreadFactory threadFactory = newThreadFactory();
-        for ( int i = 0; i < workersCount; i++ ) {
-            final Ruby runtime;
-            try {
-                runtime = getRuntime(); // handles DefaultErrorApplication.getRuntime
-            }
-            catch (final UnsupportedOperationException e) { // error happened during JRuby-Rack startup
-                log("[" + getClass().getName() + "] failed to obtain (Ruby) runtime");
-                break;
-            }
+    @Override
+    public double getFifteenMinuteRate() {
+        return metrics.getFifteenMinuteRate();
+    }
 
-            if ( isExported() ) {
-                runtime.getGlobalVariables().set(GLOBAL_VAR_NAME, JavaEmbedUtils.javaToRuby(runtime, this));
-            }
-            try {
-                final RubyWorker worker = newRubyWorker(runtime, workerScript.getScript(), workerScript.getFileName());
-                final Thread workerThread = threadFactory.newThread(worker);
-                workers.put(worker, workerThread);
-                workerThread.start();
-                log("[" + getClass().getName() + "] started worker for: " + workerScript);
-            }
-            catch (final Exception e) {
-                log("[" + getClass().getName() + "] worker startup failed", e);
-                break;
-            }
-        }
+    @Override
+    public Date getLastJobTime() {
+        final long time = metrics.getLastJobTime();
+        return time == 0 ? null : new Date(time);
+    }
 
-        log("[" + getClass().getName() + "] started " + workersCount + " worker(s) for: " + workerScript
-            + " - Total active workers: " + workers.size());
+    private volatile Integer threadCount;
+
+    public Integer getThreadCount() {
+        final Integer threadCount = this.threadCount;
+        return threadCount != null ? threadCount : getConfig().getThreadCount();
+    }
+
+    private volatile Boolean parallelStartup;
+
+    public boolean isParallelStartup() {
+        final Boolean parallelStartup = this.parallelStartup;
+        return parallelStartup != null ? parallelStartup : getConfig().isParallelStartup();
+    }
+
+    public void setParallelStartup(final boolean parallelStartup) {
+        this.parallelStartup = parallelStartup;
+    }
+
+    private volatile Integer startupConcurrency;
+
+    public Integer getStartupConcurrency() {
+        final Integer startupConcurrency = this.startupConcurrency;
+        return startupConcurrency != null ? startupConcurrency : getConfig().getStartupConcurrency();
+    }
+
+    public void setStartupConcurrency(final Integer startupConcurrency) {
+        this.startupConcurrency = startupConcurrency;
     }
 
     /**
-     * Shutdown all (managed) workers.
+     * @param workerScript
+     * @return the thread count configured for the given worker (script)
      */
-    public void shutdown() {
-        final Map<RubyWorker, Thread> workers = new HashMap<RubyWorker, Thread>(this.workers);
-        this.workers.clear();
+    public int getThreadCount(final WorkerScript workerScript) {
+        final Integer count = workerScript.getThreadCount();
+        return count != null ? count : getThreadCount();
+    }
 
-        for ( final RubyWorker worker : workers.keySet() ) {
-            log("[" + getClass().getName() + "] stopping worker: " + worker);
+    /**
+     * @param workerScript
+     * @return the minimum (auto-scaled) thread count for the given worker
+     */
+    public int getThreadMin(final WorkerScript workerScript) {
+        final Integer min = workerScript.getThreadMin();
+        if ( min != null ) return min;
+        final Integer configMin = getConfig().getThreadMin();
+        return configMin != null ? configMin : getThreadCount(workerScript);
+    }
 
-            if ( isExported() ) {
-                worker.runtime.getGlobalVariables().clear(GLOBAL_VAR_NAME);
-            }
-            final Thread workerThread = workers.get(worker);
-            try {
-                worker.stop();
-                // JRuby seems to ignore Java's interrupt arithmetic
-                // @see http://jira.codehaus.org/browse/JRUBY-4135
-                workerThread.interrupt();
-                workerThread.join(1000);
+    /**
+     * @param workerScript
+     * @return the maximum (auto-scaled) thread count for the given worker
+     */
+    public int getThreadMax(final WorkerScript workerScript) {
+        final Integer max = workerScript.getThreadMax();
+        if ( max != null ) return max;
+        final Integer configMax = getConfig().getThreadMax();
+        return configMax != null ? configMax : getThreadMin(workerScript);
+    }
 
-                log("[" + getClass().getName() + "] stopped worker: " + worker);
-            }
-            catch (final InterruptedException e) {
-                log("[" + getClass().getName() + "] interrupted");
-                Thread.currentThread().interrupt();
-            }
-            catch (final Exception e) {
-                log("[" + getClass().getName() + "] ignoring exception " + e);
-            }
-        }
+    public boolean shouldUseServletLogger() {
+        final WorkerConfig config = this.config.get();
+        // NOTE: resolving the configuration might log (thus no getConfig()) :
+        return config != null ? config.isServletLogger() : Boolean.valueOf(getParameter(FORCE_USE_SERVLET_LOGGER));
+    }
+
+    public void setThreadCount(final Integer threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    private volatile Integer threadPriority;
+
+    public Integer getThreadPriority() {
+        final Integer threadPriority = this.threadPriority;
+        return threadPriority != null ? threadPriority : getConfig().getThreadPriority();
+    }
+
+    public void setThreadPriority(final Integer threadPriority) {
+        this.threadPriority = threadPriority;
+    }
+
+    private volatile String threadType;
+
+    public String getThreadType() {
+        final String threadType = this.threadType;
+        return threadType != null ? threadType : getConfig().getThreadType();
+    }
+
+    public void setThreadType(final String threadType) {
+        this.threadType = threadType;
+    }
+
+    private volatile Boolean autoscale;
 
-        log("[" + getClass().getName() + "] stopped " + workers.size() + " worker(s)");
+    public boolean isAutoscale() {
+        final Boolean autoscale = this.autoscale;
+        return autoscale != null ? autoscale : getConfig().isAutoscale();
     }
 
+    public void setAutoscale(final boolean autoscale) {
+        this.autoscale = autoscale;
+    }
+
+    private volatile Integer shutdownTimeout;
+
     /**
-     * This shall be implemented by concrete classes and should return an
-     * (initialized) JRuby runtime ready to be used by a worker.
-     * 
-     * By default this method is expected to be called as many times as the
-     * configured worker count, thus shall return the same runtime only if
-     * it's thread-safe !
-     * @return a Ruby runtime
+     * @return the shutdown timeout in milliseconds
      */
-    protected abstract Ruby getRuntime() ;
+    public int getShutdownTimeout() {
+        final Integer shutdownTimeout = this.shutdownTimeout;
+        return shutdownTimeout != null ? shutdownTimeout : getConfig().getShutdownTimeout();
+    }
 
-    // ----------------------------------------
-    // properties
-    // ----------------------------------------
+    public void setShutdownTimeout(final Integer shutdownTimeout) {
+        this.shutdownTimeout = shutdownTimeout;
+    }
 
-    private String threadPrefix;
+    private volatile Integer readyTimeout;
 
-    public String getThreadPrefix() {
-        return threadPrefix;
+    /**
+     * @return the (worker) ready timeout in milliseconds
+     */
+    public int getReadyTimeout() {
+        final Integer readyTimeout = this.readyTimeout;
+        return readyTimeout != null ? readyTimeout : getConfig().getReadyTimeout();
     }
 
-    public void setThreadPrefix(final String threadPrefix) {
-        this.threadPrefix = threadPrefix;
+    public void setReadyTimeout(final Integer readyTimeout) {
+        this.readyTimeout = readyTimeout;
     }
 
-    private Integer threadCount;
+    private volatile Boolean shutdownEscalate;
 
-    // TODO make this configurable per worker
-    public Integer getThreadCount() {
-        if (threadCount == null) {
-            final String count = getParameter(THREAD_COUNT_KEY);
-            try {
-                if ( count != null ) {
-                    return threadCount = Integer.parseInt(count);
-                }
-            }
-            catch (final NumberFormatException e) {
-                log("[" + getClass().getName() + "] " +
-                                "could not parse " + THREAD_COUNT_KEY + " parameter value = " + count, e);
-            }
-            threadCount = 1;
-        }
-        return threadCount;
+    public boolean isShutdownEscalate() {
+        final Boolean shutdownEscalate = this.shutdownEscalate;
+        return shutdownEscalate != null ? shutdownEscalate : getConfig().isShutdownEscalate();
     }
 
-    public boolean shouldUseServletLogger() {
-        return Boolean.valueOf(getParameter(FORCE_USE_SERVLET_LOGGER));
+    public void setShutdownEscalate(final boolean shutdownEscalate) {
+        this.shutdownEscalate = shutdownEscalate;
     }
 
-    public void setThreadCount(final Integer threadCount) {
-        this.threadCount = threadCount;
+    private volatile Boolean scriptWatch;
+
+    public boolean isScriptWatch() {
+        final Boolean scriptWatch = this.scriptWatch;
+        return scriptWatch != null ? scriptWatch : getConfig().isScriptWatch();
     }
 
-    private Integer threadPriority;
+    public void setScriptWatch(final boolean scriptWatch) {
+        this.scriptWatch = scriptWatch;
+    }
 
-    public Integer getThreadPriority() {
-        if (threadPriority == null) {
-            final String priority = getParameter(THREAD_PRIORITY_KEY);
-            try {
-                if ( priority != null ) {
-                    if ( "NORM".equalsIgnoreCase(priority) )
-                        return threadPriority = Thread.NORM_PRIORITY;
-                    else if ( "MIN".equalsIgnoreCase(priority) )
-                        return threadPriority = Thread.MIN_PRIORITY;
-                    else if ( "MAX".equalsIgnoreCase(priority) )
-                        return threadPriority = Thread.MAX_PRIORITY;
-                    return threadPriority = Integer.parseInt(priority);
-                }
-            }
-            catch (final NumberFormatException e) {
-                log("[" + getClass().getName() + "] " +
-                                "could not parse " + THREAD_PRIORITY_KEY + " parameter value = '" + priority + "'");
-            }
-            threadPriority = Thread.NORM_PRIORITY;
-        }
-        return threadPriority;
+    private volatile Boolean jmx;
 
+    public boolean isJmx() {
+        final Boolean jmx = this.jmx;
+        return jmx != null ? jmx : getConfig().isJmx();
     }
 
-    public void setThreadPriority(final Integer threadPriority) {
-        this.threadPriority = threadPriority;
+    public void setJmx(final boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    private volatile Boolean restartWorkers;
+
+    public boolean isRestartWorkers() {
+        final Boolean restartWorkers = this.restartWorkers;
+        return restartWorkers != null ? restartWorkers : getConfig().isRestart();
+    }
+
+    public void setRestartWorkers(final boolean restartWorkers) {
+        this.restartWorkers = restartWorkers;
     }
 
     /**
      * Get the worker scripts/files to execute.
      */
     public List<WorkerScript> getWorkerScripts() {
-        final String workersConfig = getParameter(WORKER_KEY);
+        final String workersConfig = getConfig().getWorkers();
 
         if ( workersConfig == null || workersConfig.length() == 0) {
-            return Collections.emptyList();
+            // no built-in worker - might still have a jruby.worker.script(.path)
+            final WorkerScript workerScript = getWorkerScript(null);
+            if ( workerScript == null ) return Collections.emptyList();
+            return Collections.singletonList(workerScript);
         }
 
         final String[] workers = workersConfig.split(",");
         final List<WorkerScript> workerScripts = new ArrayList<>();
 
         for (final String worker:workers) {
-            final WorkerScript workerScript = getWorkerScript(worker);
+            final WorkerScript workerScript = getWorkerScript(worker.trim());
             if (workerScript != null) {
                 workerScripts.add(workerScript);
             }
@@ -306,9 +1739,45 @@ public abstract class WorkerManager {
     }
 
     protected WorkerScript getWorkerScript(final String workerId)
+    {
+        final WorkerScript workerScript = loadWorkerScript(workerId);
+        if ( workerScript != null && workerId != null ) {
+            configureWorkerScript(workerScript, workerKey(workerId));
+        }
+        return workerScript;
+    }
+
+    private static String workerKey(final String workerId) {
+        return WorkerConfig.workerKey(workerId);
+    }
+
+    /**
+     * Resolves (scoped) thread settings for the given worker.
+     * @param workerScript
+     * @param workerKey the key e.g. "resque" for <code>jruby.worker.resque.thread.count</code>
+     */
+    protected void configureWorkerScript(final WorkerScript workerScript, final String workerKey) {
+        final WorkerConfig.Script config = getConfig().getScriptConfig(workerKey);
+        workerScript.setThreadCount( config.getThreadCount() );
+        workerScript.setThreadPriority( config.getThreadPriority() );
+        workerScript.setThreadType( config.getThreadType() );
+        workerScript.setThreadMin( config.getThreadMin() );
+        workerScript.setThreadMax( config.getThreadMax() );
+        if ( "sidekiq".equals(workerKey) ) {
+            // a single launcher runs all processors (thread count is the concurrency)
+            final int concurrency = getThreadCount(workerScript);
+            if ( concurrency > 1 ) {
+                log("[" + getClass().getName() + "] starting a single sidekiq launcher (concurrency: " + concurrency + ")");
+            }
+            workerScript.setThreadCount(1);
+            workerScript.setThreadMin(1); workerScript.setThreadMax(1);
+        }
+    }
+
+    private WorkerScript loadWorkerScript(final String workerId)
     {
         if ( workerId != null ) {
-            final String script = getAvailableWorkers().get( workerId.replace("::", "_").toLowerCase() );
+            final String script = getAvailableWorkers().get( workerKey(workerId) );
             if ( script != null ) {
                 return WorkerScript.forFileName( workerId, script );
             }
@@ -317,37 +1786,14 @@ public abstract class WorkerManager {
             }
         }
 
-        String script = getParameter(SCRIPT_KEY);
+        final WorkerConfig config = getConfig();
+        String script = config.getScript();
         if ( script != null ) return WorkerScript.forScript( workerId, script );
 
-        final String scriptPath = getParameter(SCRIPT_PATH_KEY);
+        final String scriptPath = config.getScriptPath();
         if ( scriptPath == null ) return null;
-        // INSPIRED BY DefaultRackApplicationFactory :
         try {
-            final InputStream scriptStream = openPath(scriptPath);
-            if ( scriptStream != null ) {
-                final StringBuilder content = new StringBuilder(256);
-                int c = scriptStream.read();
-                Reader reader; String coding = "UTF-8";
-                if ( c == '#' ) { // look for a coding: pragma
-                    content.append((char) c);
-                    while ((c = scriptStream.read()) != -1 && c != 10) {
-                        content.append((char) c);
-                    }
-                    final Pattern matchCoding = Pattern.compile("coding:\\s*(\\S+)");
-                    final Matcher matcher = matchCoding.matcher( content.toString() );
-                    if (matcher.find()) coding = matcher.group(1);
-                }
-
-                content.append((char) c);
-                reader = new InputStreamReader(scriptStream, coding);
-
-                while ((c = reader.read()) != -1) {
-                    content.append((char) c);
-                }
-
-                script = content.toString();
-            }
+            script = scriptSources.load(scriptPath);
         }
         catch (final Exception e) {
             log("[" + getClass().getName() + "] error reading script: '" + scriptPath + "'", e);
@@ -367,6 +1813,8 @@ public abstract class WorkerManager {
                 put("navvy", "navvy/start_worker.rb");
                 put("resque", "resque/start_worker.rb");
                 put("sidekiq", "sidekiq/start_worker.rb");
+                put("inmemory", "inmemory/start_worker.rb");
+                put("journal", "journal/start_worker.rb");
             }
 
         };
@@ -396,14 +1844,92 @@ public abstract class WorkerManager {
         return new RubyWorker(runtime, script, fileName);
     }
 
+    protected WorkerSupervisor newWorkerSupervisor(final RubyWorker worker) {
+        final WorkerConfig config = getConfig();
+        return new WorkerSupervisor(this, worker,
+            config.getRestartMax(),
+            config.getRestartDelay(),
+            config.getRestartDelayMax(),
+            config.isRestartFreshRuntime()
+        );
+    }
+
     protected ThreadFactory newThreadFactory() {
-        return new WorkerThreadFactory( getThreadPrefix(), getThreadPriority() );
+        final WorkerThreadFactory threadFactory = new WorkerThreadFactory( getThreadPrefix(), getThreadPriority() );
+        if ( "virtual".equals( getThreadType() ) ) configureVirtualThreads(threadFactory);
+        return threadFactory;
+    }
+
+    /**
+     * @param workerScript
+     * @return a thread factory for the worker's threads (respecting it's settings)
+     */
+    protected ThreadFactory newThreadFactory(final WorkerScript workerScript) {
+        final Integer priority = workerScript.getThreadPriority();
+        final String type = workerScript.getThreadType();
+        if ( priority == null && type == null ) return newThreadFactory();
+
+        final WorkerThreadFactory threadFactory = new WorkerThreadFactory( getThreadPrefix(),
+            priority != null ? priority : getThreadPriority() );
+        if ( "virtual".equals( type != null ? type : getThreadType() ) ) configureVirtualThreads(threadFactory);
+        return threadFactory;
+    }
+
+    private void configureVirtualThreads(final WorkerThreadFactory threadFactory) {
+        if ( ! WorkerThreadFactory.isVirtualThreadSupported() ) {
+            log("[" + getClass().getName() + "] virtual threads not supported (JDK 21+ required)" +
+                " - using platform threads");
+            return;
+        }
+        threadFactory.setVirtualThreads(true);
+        // NOTE: pinned carrier threads are reported with -Djdk.tracePinnedThreads=short
+        // (a JVM option) or recorded as jdk.VirtualThreadPinned (JFR) events
+    }
+
+    /**
+     * @return a thread factory for (short-lived) threads used during a parallel startup
+     */
+    protected ThreadFactory newStartupThreadFactory() {
+        final String prefix = getThreadPrefix();
+        return new ThreadFactory() {
+
+            private final AtomicInteger threadCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable task) {
+                // NOTE: do not name these "worker" (Resque identifies worker threads by name)
+                final String name = ( prefix == null || prefix.length() == 0 ? "" : prefix + '-' ) +
+                    "jruby-rack-startup#" + threadCount.getAndIncrement();
+                final Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        };
     }
 
     public String getParameter(final String key) {
         return System.getProperty(key);
     }
 
+    /**
+     * Resolves an integer parameter (logs if the value can not be parsed).
+     * @param key
+     * @param defaultValue returned if not set (or invalid)
+     * @return parameter value
+     */
+    protected Integer getIntegerParameter(final String key, final Integer defaultValue) {
+        final String value = getParameter(key);
+        try {
+            if ( value != null ) return Integer.parseInt(value.trim());
+        }
+        catch (final NumberFormatException e) {
+            log("[" + getClass().getName() + "] " +
+                            "could not parse " + key + " parameter value = " + value, e);
+        }
+        return defaultValue;
+    }
+
     protected InputStream openPath(final String path) throws IOException {
         try {
             return new URL(path).openStream();
@@ -417,6 +1943,33 @@ public abstract class WorkerManager {
         return null;
     }
 
+    /**
+     * @param path
+     * @return last modified time for the path or 0 if not known (or not found)
+     */
+    protected long getLastModified(final String path) {
+        final File file = getFile(path);
+        return file == null ? 0 : file.lastModified();
+    }
+
+    /**
+     * @param path
+     * @return the file (on disk) for a path (as used with {@link #openPath(String)}) or null
+     */
+    protected File getFile(final String path) {
+        try {
+            final URL url = new URL(path);
+            if ( "file".equals(url.getProtocol()) ) return new File(url.toURI());
+            return null;
+        }
+        catch (final MalformedURLException e) {
+            return new File(path);
+        }
+        catch (final Exception e) { // URISyntaxException, IllegalArgumentException
+            return null;
+        }
+    }
+
     protected void log(final String message) {
         System.out.println(message);
     }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.Date;
+
+/**
+ * Management interface of a {@link WorkerManager} (one per web-application).
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public interface WorkerManagerMBean {
+
+    String getThreadPrefix();
+
+    /**
+     * @return number of (managed) workers
+     */
+    int getWorkerCount();
+
+    /**
+     * @return number of workers running and not stopping
+     */
+    int getActiveWorkerCount();
+
+    long getJobsProcessed();
+
+    long getJobsFailed();
+
+    double getOneMinuteRate();
+
+    double getFiveMinuteRate();
+
+    double getFifteenMinuteRate();
+
+    Date getLastJobTime();
+
+    /**
+     * @return whether all workers have been paused
+     */
+    boolean isPaused();
+
+    /**
+     * Pause workers for the given script (id).
+     * @param scriptId
+     */
+    void pause(String scriptId);
+
+    /**
+     * Resume workers for the given script (id).
+     * @param scriptId
+     */
+    void resume(String scriptId);
+
+    void pauseAll();
+
+    /**
+     * Rolling restart of workers for the given script (id).
+     * @param scriptId
+     * @param maxUnavailable
+     * @return restarted worker count
+     */
+    int restartWorkers(String scriptId, int maxUnavailable);
+
+    void resumeAll();
+
+    /**
+     * Re-read (<code>jruby.worker.*</code>) parameters.
+     */
+    void reloadConfig();
+
+}
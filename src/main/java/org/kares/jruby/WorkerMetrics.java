@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Job (throughput) metrics - processed/failed counts and exponentially
+ * weighted moving average rates (jobs per second) over 1, 5 and 15 minutes.
+ *
+ * Rates are ticked lazily (every 5 seconds) as jobs complete or are read.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class WorkerMetrics {
+
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final StripedCounter processed = new StripedCounter();
+    private final StripedCounter failed = new StripedCounter();
+    private final StripedCounter uncounted = new StripedCounter();
+
+    private final Rate m1Rate = new Rate(1), m5Rate = new Rate(5), m15Rate = new Rate(15);
+    private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+
+    private volatile long lastJobTime;
+
+    public void jobCompleted(final boolean success) {
+        processed.increment();
+        if ( ! success ) failed.increment();
+        uncounted.increment();
+        lastJobTime = System.currentTimeMillis();
+        tickIfNecessary();
+    }
+
+    public long getJobsProcessed() {
+        return processed.sum();
+    }
+
+    public long getJobsFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return time (millis) the last job completed or 0 if none yet
+     */
+    public long getLastJobTime() {
+        return lastJobTime;
+    }
+
+    public double getOneMinuteRate() {
+        tickIfNecessary(); return m1Rate.getRate();
+    }
+
+    public double getFiveMinuteRate() {
+        tickIfNecessary(); return m5Rate.getRate();
+    }
+
+    public double getFifteenMinuteRate() {
+        tickIfNecessary(); return m15Rate.getRate();
+    }
+
+    private void tickIfNecessary() {
+        final long oldTick = lastTick.get();
+        final long age = System.nanoTime() - oldTick;
+        if ( age > TICK_INTERVAL ) {
+            final long newTick = oldTick + age - age % TICK_INTERVAL;
+            if ( lastTick.compareAndSet(oldTick, newTick) ) {
+                final long ticks = age / TICK_INTERVAL;
+                for ( long i = 0; i < ticks; i++ ) {
+                    final long count = i == 0 ? uncounted.sumThenReset() : 0;
+                    m1Rate.tick(count); m5Rate.tick(count); m15Rate.tick(count);
+                }
+            }
+        }
+    }
+
+    /**
+     * An exponentially weighted moving average (UNIX load average style).
+     */
+    private static class Rate {
+
+        private final double alpha;
+        private volatile boolean initialized;
+        private volatile double rate; // per nano-second
+
+        Rate(final int minutes) {
+            this.alpha = 1 - Math.exp( -5.0 / 60 / minutes );
+        }
+
+        // only called by the thread that won the tick
+        void tick(final long count) {
+            final double instantRate = count / (double) TICK_INTERVAL;
+            if ( initialized ) {
+                rate += ( alpha * ( instantRate - rate ) );
+            }
+            else {
+                rate = instantRate; initialized = true;
+            }
+        }
+
+        double getRate() { // per second
+            return rate * TimeUnit.SECONDS.toNanos(1);
+        }
+
+    }
+
+}
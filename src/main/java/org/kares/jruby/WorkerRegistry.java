@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jruby.Ruby;
+
+/**
+ * The (concurrent) registry of workers managed by a {@link WorkerManager}.
+ *
+ * Reads never lock, iterating is weakly consistent (safe while workers are
+ * being started or stopped). Removal is atomic thus only one of concurrent
+ * callers (e.g. a shutdown and a rolling restart) gets to release a worker.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class WorkerRegistry {
+
+    /**
+     * A registered worker.
+     */
+    public static final class Entry {
+
+        private final long id;
+        private final RubyWorker worker;
+        private final Thread thread;
+        private final long registeredTime;
+
+        Entry(final long id, final RubyWorker worker, final Thread thread) {
+            this.id = id;
+            this.worker = worker;
+            this.thread = thread;
+            this.registeredTime = System.currentTimeMillis();
+        }
+
+        /**
+         * @return a (sequential) id unique within the registry
+         */
+        public long getId() { return id; }
+
+        public RubyWorker getWorker() { return worker; }
+
+        public Thread getThread() { return thread; }
+
+        /**
+         * @return the runtime the worker currently uses (changes on restarts)
+         */
+        public Ruby getRuntime() { return worker.getRuntime(); }
+
+        public WorkerScript getWorkerScript() { return worker.getWorkerScript(); }
+
+        public WorkerState getState() { return worker.getWorkerState(); }
+
+        /**
+         * @return time (millis) of the worker's last state change
+         */
+        public long getStateTime() { return worker.getStateTime(); }
+
+        /**
+         * @return time (millis) the worker got registered (started)
+         */
+        public long getRegisteredTime() { return registeredTime; }
+
+        /**
+         * @return whether the worker is running and has not been asked to stop
+         */
+        public boolean isActive() {
+            return ! worker.isStopped() && thread.isAlive();
+        }
+
+        @Override
+        public String toString() {
+            return "#" + id + " " + worker + " [" + thread.getName() + "] " + getState();
+        }
+
+    }
+
+    private final ConcurrentMap<RubyWorker, Entry> entries = new ConcurrentHashMap<RubyWorker, Entry>(8);
+    private final AtomicLong ids = new AtomicLong(0);
+
+    /**
+     * @param worker
+     * @param thread the (not yet started) thread for the worker
+     * @return the registered entry
+     * @throws IllegalStateException if the worker is already registered
+     */
+    public Entry register(final RubyWorker worker, final Thread thread) {
+        final Entry entry = new Entry(ids.incrementAndGet(), worker, thread);
+        if ( entries.putIfAbsent(worker, entry) != null ) {
+            throw new IllegalStateException("worker already registered: " + worker);
+        }
+        return entry;
+    }
+
+    public Entry get(final RubyWorker worker) {
+        return entries.get(worker);
+    }
+
+    /**
+     * @param worker
+     * @return the worker's thread or null if not registered
+     */
+    public Thread getThread(final RubyWorker worker) {
+        final Entry entry = entries.get(worker);
+        return entry == null ? null : entry.getThread();
+    }
+
+    public boolean contains(final RubyWorker worker) {
+        return entries.containsKey(worker);
+    }
+
+    /**
+     * @param worker
+     * @return the removed entry or null if not (or no longer) registered
+     */
+    public Entry remove(final RubyWorker worker) {
+        return entries.remove(worker);
+    }
+
+    /**
+     * Removes all workers, registered concurrently (while removing) ones
+     * are either removed as well or remain registered - never lost.
+     * @return the removed entries
+     */
+    public List<Entry> removeAll() {
+        final List<Entry> removed = new ArrayList<Entry>(entries.size());
+        for ( final RubyWorker worker : entries.keySet() ) {
+            final Entry entry = entries.remove(worker);
+            if ( entry != null ) removed.add(entry);
+        }
+        return removed;
+    }
+
+    /**
+     * @return a (live) read-only view of the registered workers
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * @return (a snapshot of) registered workers
+     */
+    public List<RubyWorker> getWorkers() {
+        return new ArrayList<RubyWorker>(entries.keySet());
+    }
+
+    /**
+     * @return (a snapshot of) registered worker threads
+     */
+    public List<Thread> getThreads() {
+        final List<Thread> threads = new ArrayList<Thread>(entries.size());
+        for ( final Entry entry : entries.values() ) threads.add(entry.getThread());
+        return threads;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+}
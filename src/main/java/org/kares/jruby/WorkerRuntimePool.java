@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jruby.Ruby;
+
+/**
+ * A pool of (Ruby) runtimes dedicated to workers.
+ *
+ * Runtimes are created using {@link #newRuntime()}, the minimum amount gets
+ * booted in the background once the pool is {@link #start()}ed. A checked-out
+ * runtime is used by a single worker and returned on it's shutdown.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public abstract class WorkerRuntimePool {
+
+    private final int minSize;
+    private final int maxSize;
+    private final long checkoutTimeout; // millis
+
+    private final BlockingQueue<Ruby> available = new LinkedBlockingQueue<Ruby>();
+    private final Set<Ruby> runtimes = Collections.newSetFromMap(new ConcurrentHashMap<Ruby, Boolean>());
+    private final AtomicInteger size = new AtomicInteger(0); // created + booting
+    private final AtomicInteger booting = new AtomicInteger(0); // in the background
+
+    private final AtomicLong checkoutCount = new AtomicLong(0);
+    private final AtomicLong checkoutWaitTime = new AtomicLong(0); // nanos
+    private final AtomicLong maxCheckoutWaitTime = new AtomicLong(0); // nanos
+
+    private volatile boolean destroyed;
+
+    /**
+     * @param minSize runtimes to boot (in the background) on start
+     * @param maxSize maximum runtimes to ever create
+     * @param checkoutTimeout how long to wait for a runtime (in milliseconds)
+     */
+    public WorkerRuntimePool(final int minSize, final int maxSize, final long checkoutTimeout) {
+        if ( maxSize < 1 ) {
+            throw new IllegalArgumentException("max size: " + maxSize + " < 1");
+        }
+        this.minSize = Math.max(0, Math.min(minSize, maxSize));
+        this.maxSize = maxSize;
+        this.checkoutTimeout = checkoutTimeout;
+    }
+
+    /**
+     * Creates a new, initialized, runtime.
+     * @return a Ruby runtime
+     * @throws UnsupportedOperationException if a runtime can not be booted
+     */
+    protected abstract Ruby newRuntime() throws UnsupportedOperationException ;
+
+    /**
+     * Tears down a runtime created by {@link #newRuntime()}.
+     * @param runtime
+     */
+    protected void destroyRuntime(final Ruby runtime) {
+        runtime.tearDown(false);
+    }
+
+    /**
+     * Starts booting the minimum amount of runtimes (in background threads).
+     */
+    public void start() {
+        int count = 0; // reserve slots up-front so check-outs wait for booting runtimes
+        while ( size.get() < minSize && reserve() ) count++;
+        if ( count == 0 ) return;
+
+        booting.addAndGet(count);
+        log("booting " + count + " worker runtime(s) in the background");
+        final int threads = Math.max(1, Math.min(count, Runtime.getRuntime().availableProcessors()));
+        final AtomicInteger remaining = new AtomicInteger(count);
+        for ( int i = 0; i < threads; i++ ) {
+            final Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    while ( remaining.getAndDecrement() > 0 ) {
+                        if ( destroyed ) {
+                            size.decrementAndGet(); booting.decrementAndGet(); continue;
+                        }
+                        try {
+                            final Ruby runtime = create();
+                            if ( runtime != null ) available.offer(runtime);
+                        }
+                        catch (final RuntimeException e) {
+                            log("failed booting worker runtime: " + e);
+                        }
+                        finally {
+                            booting.decrementAndGet();
+                        }
+                    }
+                }
+
+            }, "jruby-rack-runtime-boot#" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Check-out a runtime, waits (up to the configured timeout) if there are
+     * none available and the maximum pool size has been reached (or runtimes
+     * are still booting).
+     *
+     * @return a runtime (for exclusive use)
+     * @throws UnsupportedOperationException if a runtime can not be booted
+     * @throws IllegalStateException if the pool is destroyed or times out
+     */
+    public Ruby checkout() throws UnsupportedOperationException, IllegalStateException {
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(checkoutTimeout);
+        try {
+            while ( ! destroyed ) {
+                Ruby runtime = available.poll();
+                // prefer waiting for runtimes being booted in the background :
+                if ( runtime == null && booting.get() == 0 && reserve() ) {
+                    runtime = create();
+                }
+                if ( runtime == null ) {
+                    final long remaining = deadline - System.nanoTime();
+                    if ( remaining <= 0 ) {
+                        throw new IllegalStateException("timed out waiting (" + checkoutTimeout +
+                                "ms) for a worker runtime, pool size: " + size.get());
+                    }
+                    // NOTE: wait in slices as a (failed) boot frees a slot :
+                    runtime = available.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(100)), TimeUnit.NANOSECONDS);
+                }
+                if ( runtime != null ) {
+                    recordCheckout(System.nanoTime() - start);
+                    return runtime;
+                }
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for a worker runtime", e);
+        }
+        throw new IllegalStateException("pool destroyed");
+    }
+
+    /**
+     * Returns a runtime previously checked-out from this pool.
+     * @param runtime
+     */
+    public void checkin(final Ruby runtime) {
+        if ( ! runtimes.contains(runtime) ) return; // not ours
+        if ( destroyed ) {
+            if ( runtimes.remove(runtime) ) destroyRuntime(runtime);
+            return;
+        }
+        available.offer(runtime);
+    }
+
+    /**
+     * Tears down all runtimes created by this pool.
+     */
+    public void destroy() {
+        destroyed = true;
+        final List<Ruby> runtimes = new ArrayList<Ruby>(this.runtimes);
+        available.clear();
+        for ( final Ruby runtime : runtimes ) {
+            if ( ! this.runtimes.remove(runtime) ) continue; // being destroyed by create()
+            try {
+                destroyRuntime(runtime);
+            }
+            catch (final RuntimeException e) {
+                log("failed to destroy worker runtime: " + e);
+            }
+        }
+    }
+
+    private boolean reserve() {
+        int current;
+        do {
+            current = size.get();
+            if ( current >= maxSize ) return false;
+        }
+        while ( ! size.compareAndSet(current, current + 1) );
+        return true;
+    }
+
+    // @return null if the pool got destroyed while booting the runtime
+    private Ruby create() {
+        final long start = System.nanoTime();
+        final Ruby runtime;
+        try {
+            runtime = newRuntime();
+        }
+        catch (final RuntimeException e) {
+            size.decrementAndGet(); throw e;
+        }
+        runtimes.add(runtime);
+        if ( destroyed ) { // destroyed while booting - nothing else tears it down
+            if ( runtimes.remove(runtime) ) destroyRuntime(runtime);
+            return null;
+        }
+        log("booted worker runtime in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        return runtime;
+    }
+
+    private void recordCheckout(final long waitTime) {
+        checkoutCount.incrementAndGet();
+        checkoutWaitTime.addAndGet(waitTime);
+        long max;
+        do {
+            max = maxCheckoutWaitTime.get();
+            if ( waitTime <= max ) break;
+        }
+        while ( ! maxCheckoutWaitTime.compareAndSet(max, waitTime) );
+    }
+
+    protected void log(final String message) {
+        System.out.println(message);
+    }
+
+    // ----------------------------------------
+    // properties
+    // ----------------------------------------
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of created (or currently booting) runtimes
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    /**
+     * @return number of runtimes available for a check-out
+     */
+    public int getAvailableSize() {
+        return available.size();
+    }
+
+    public long getCheckoutCount() {
+        return checkoutCount.get();
+    }
+
+    /**
+     * @return total time spent waiting for runtimes on check-out (in milliseconds)
+     */
+    public long getCheckoutWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(checkoutWaitTime.get());
+    }
+
+    /**
+     * @return the longest check-out wait time (in milliseconds)
+     */
+    public long getMaxCheckoutWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxCheckoutWaitTime.get());
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "[size=" + getSize() + ", available=" + getAvailableSize() +
+            ", min=" + minSize + ", max=" + maxSize + ", checkouts=" + getCheckoutCount() +
+            ", wait=" + getCheckoutWaitMillis() + "ms, max-wait=" + getMaxCheckoutWaitMillis() + "ms]";
+    }
+
+}
@@ -3,7 +3,17 @@ package org.kares.jruby;
 
 public class WorkerScript
 {
-    private final String id,script, fileName;
+    private final String id, fileName;
+    private volatile String script; // reloadable
+
+    // per worker (script) settings - null to use the manager's defaults
+    private Integer threadCount, threadPriority;
+    private Integer threadMin, threadMax;
+    private String threadType;
+
+    private volatile BacklogProbe backlogProbe;
+    private volatile boolean paused;
+    private volatile boolean restartsExhausted;
 
     public static WorkerScript forScript(final String id, final String script) {
         return new WorkerScript(id,script, null);
@@ -24,16 +34,126 @@ public class WorkerScript
         this.fileName = fileName;
     }
 
+    /**
+     * @return the worker id (e.g. "resque") or null for a (custom) script
+     */
+    public String getId()
+    {
+        return id;
+    }
+
     public String getScript()
     {
         return script;
     }
 
+    /**
+     * Updates the script source (e.g. reloaded from a changed file),
+     * only workers started afterwards run the new source.
+     * @param script
+     */
+    void setScript(final String script)
+    {
+        this.script = script;
+    }
+
     public String getFileName()
     {
         return fileName;
     }
 
+    public Integer getThreadCount()
+    {
+        return threadCount;
+    }
+
+    public void setThreadCount(final Integer threadCount)
+    {
+        this.threadCount = threadCount;
+    }
+
+    public Integer getThreadPriority()
+    {
+        return threadPriority;
+    }
+
+    public void setThreadPriority(final Integer threadPriority)
+    {
+        this.threadPriority = threadPriority;
+    }
+
+    public String getThreadType()
+    {
+        return threadType;
+    }
+
+    public void setThreadType(final String threadType)
+    {
+        this.threadType = threadType;
+    }
+
+    /**
+     * @return the minimum worker count (when auto-scaling)
+     */
+    public Integer getThreadMin()
+    {
+        return threadMin;
+    }
+
+    public void setThreadMin(final Integer threadMin)
+    {
+        this.threadMin = threadMin;
+    }
+
+    /**
+     * @return the maximum worker count (when auto-scaling)
+     */
+    public Integer getThreadMax()
+    {
+        return threadMax;
+    }
+
+    public void setThreadMax(final Integer threadMax)
+    {
+        this.threadMax = threadMax;
+    }
+
+    public BacklogProbe getBacklogProbe()
+    {
+        return backlogProbe;
+    }
+
+    public void setBacklogProbe(final BacklogProbe backlogProbe)
+    {
+        this.backlogProbe = backlogProbe;
+    }
+
+    /**
+     * @return whether workers (for this script) have been asked to pause
+     */
+    public boolean isPaused()
+    {
+        return paused;
+    }
+
+    void setPaused(final boolean paused)
+    {
+        this.paused = paused;
+    }
+
+    /**
+     * @return whether the restart budget (for this script's workers) is spent
+     */
+    public boolean isRestartsExhausted()
+    {
+        return restartsExhausted;
+    }
+
+    void setRestartsExhausted(final boolean restartsExhausted)
+    {
+        this.restartsExhausted = restartsExhausted;
+    }
+
     @Override
     public String toString()
     {
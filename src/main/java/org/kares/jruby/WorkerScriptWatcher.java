@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches worker script files (on disk) and asks the manager to reload a
+ * script once it's file changes.
+ *
+ * Changes are batched - a reload happens once no more changes (events) are
+ * reported for a (quiet) period, editors tend to write files in several steps.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class WorkerScriptWatcher implements Runnable {
+
+    private final WorkerManager manager;
+    private final long quietPeriod; // millis
+    private final WatchService watchService;
+    private final Map<Path, WorkerScript> watched = new ConcurrentHashMap<Path, WorkerScript>(4);
+
+    private Thread thread;
+
+    public WorkerScriptWatcher(final WorkerManager manager, final long quietPeriod) throws IOException {
+        this.manager = manager;
+        this.quietPeriod = quietPeriod;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Watch the file of the given worker (script).
+     * @param workerScript
+     * @param file
+     * @throws IOException
+     */
+    public void watch(final WorkerScript workerScript, final File file) throws IOException {
+        final Path path = file.getAbsoluteFile().toPath();
+        // NOTE: watching the directory as editors usually replace (move) files
+        path.getParent().register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watched.put(path, workerScript);
+    }
+
+    public synchronized void start() {
+        if ( thread != null ) return;
+        final String prefix = manager.getThreadPrefix();
+        thread = new Thread(this, ( prefix == null || prefix.length() == 0 ? "" : prefix + '-' ) + "jruby-rack-script-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        try {
+            watchService.close(); // wakes up the watcher thread
+        }
+        catch (final IOException e) {
+            manager.log("[" + manager.getClass().getName() + "] failed closing script watcher: " + e);
+        }
+        if ( thread != null ) {
+            try {
+                thread.join(1000);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while ( true ) {
+                final Set<WorkerScript> changed = new LinkedHashSet<WorkerScript>();
+                WatchKey key = watchService.take();
+                do { // collect events until it gets quiet :
+                    collectChanges(key, changed);
+                    key = watchService.poll(quietPeriod, TimeUnit.MILLISECONDS);
+                }
+                while ( key != null );
+
+                for ( final WorkerScript workerScript : changed ) {
+                    try {
+                        manager.reloadWorkerScript(workerScript);
+                    }
+                    catch (final RuntimeException e) {
+                        manager.log("[" + manager.getClass().getName() + "] failed reloading: " + workerScript, e);
+                    }
+                }
+            }
+        }
+        catch (final ClosedWatchServiceException e) {
+            // stopped
+        }
+        catch (final InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private void collectChanges(final WatchKey key, final Set<WorkerScript> changed) {
+        final Path dir = (Path) key.watchable();
+        for ( final WatchEvent<?> event : key.pollEvents() ) {
+            if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+                changed.addAll(watched.values()); continue;
+            }
+            final WorkerScript workerScript = watched.get( dir.resolve((Path) event.context()) );
+            if ( workerScript != null ) changed.add(workerScript);
+        }
+        key.reset();
+    }
+
+}
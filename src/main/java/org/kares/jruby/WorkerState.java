@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+/**
+ * The (life-cycle) state of a worker.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public enum WorkerState {
+
+    /** created, not yet running */
+    STARTING,
+    /** running (processing a job if reported by the worker) */
+    RUNNING,
+    /** waiting for jobs (as reported by the worker) */
+    IDLE,
+    /** waiting to be resumed */
+    PAUSED,
+    /** no longer running (exited or stopped) */
+    DEAD
+
+}
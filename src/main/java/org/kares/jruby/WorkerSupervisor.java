@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jruby.Ruby;
+
+/**
+ * Runs a worker and restarts it whenever it exits (returns or throws) until
+ * it's stopped or the restart budget is exhausted.
+ *
+ * Restarts are delayed using a (jittered) exponential backoff, the delay
+ * resets once a worker keeps running for longer than the maximum delay.
+ *
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class WorkerSupervisor implements Runnable {
+
+    private final WorkerManager manager;
+    private final RubyWorker worker;
+
+    private final int maxRestarts; // negative for unlimited
+    private final long restartDelay; // millis
+    private final long maxRestartDelay; // millis
+    private final boolean freshRuntime;
+
+    public WorkerSupervisor(final WorkerManager manager, final RubyWorker worker,
+        final int maxRestarts, final long restartDelay, final long maxRestartDelay,
+        final boolean freshRuntime) {
+        this.manager = manager;
+        this.worker = worker;
+        this.maxRestarts = maxRestarts;
+        this.restartDelay = Math.max(1, restartDelay);
+        this.maxRestartDelay = Math.max(this.restartDelay, maxRestartDelay);
+        this.freshRuntime = freshRuntime;
+    }
+
+    public RubyWorker getWorker() {
+        return worker;
+    }
+
+    @Override
+    public void run() {
+        int failures = 0; // consecutive
+        while ( true ) {
+            final long start = System.currentTimeMillis();
+            Throwable failure = null;
+            try {
+                worker.run();
+            }
+            catch (final StackOverflowError e) {
+                failure = e;
+            }
+            catch (final VirtualMachineError e) {
+                worker.exited(e); throw e; // OutOfMemoryError - no point restarting
+            }
+            catch (final Throwable e) {
+                failure = e;
+            }
+
+            if ( worker.isStopped() || Thread.currentThread().isInterrupted() ) return;
+
+            worker.exited(failure);
+            final String reason = failure == null ? "returned" : "failed: " + failure;
+            if ( maxRestarts >= 0 && worker.getRestartCount() >= maxRestarts ) {
+                manager.log("[" + manager.getClass().getName() + "] worker " + worker + " " + reason +
+                    " - not restarting (restarted " + worker.getRestartCount() + " times already)");
+                final WorkerScript workerScript = worker.getWorkerScript();
+                if ( workerScript != null ) workerScript.setRestartsExhausted(true); // no auto-scaling back
+                manager.removeWorker(worker);
+                return;
+            }
+
+            if ( System.currentTimeMillis() - start > maxRestartDelay ) failures = 0; // was running fine
+            final long delay = nextRestartDelay(failures++);
+            manager.log("[" + manager.getClass().getName() + "] worker " + worker + " " + reason +
+                " - restarting in " + delay + "ms");
+            try {
+                Thread.sleep(delay);
+            }
+            catch (final InterruptedException e) {
+                return; // shutting down
+            }
+            if ( worker.isStopped() ) return;
+
+            worker.restarted( freshRuntime ? freshRuntime() : worker.getRuntime() );
+        }
+    }
+
+    /**
+     * @param failures consecutive failures so far
+     * @return a jittered exponential delay (in milliseconds)
+     */
+    long nextRestartDelay(final int failures) {
+        long delay = restartDelay << Math.min(failures, 30);
+        if ( delay <= 0 || delay > maxRestartDelay ) delay = maxRestartDelay;
+        // "equal jitter" - keep half the delay and randomize the rest :
+        final long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    private Ruby freshRuntime() {
+        final Ruby current = worker.getRuntime();
+        final Ruby runtime;
+        try {
+            runtime = manager.getRuntime();
+        }
+        catch (final RuntimeException e) {
+            manager.log("[" + manager.getClass().getName() + "] failed to obtain a fresh (Ruby) runtime" +
+                " for worker " + worker + " (restarting on the same runtime): " + e);
+            return current;
+        }
+        if ( runtime != current ) {
+            manager.exportTo(runtime);
+            manager.releaseRuntime(current);
+        }
+        return runtime;
+    }
+
+}
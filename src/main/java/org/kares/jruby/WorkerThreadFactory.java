@@ -15,6 +15,8 @@
  */
 package org.kares.jruby;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -36,9 +38,28 @@ public class WorkerThreadFactory implements ThreadFactory {
 
     static final AtomicInteger threadCount = new AtomicInteger(1);
 
+    // Thread.ofVirtual().name(name).unstarted(task) - resolved reflectively (JDK 21+)
+    private static final Method OF_VIRTUAL, BUILDER_NAME, BUILDER_UNSTARTED;
+    static {
+        Method ofVirtual = null, name = null, unstarted = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+        }
+        catch (final Exception e) { // NoSuchMethodException, ClassNotFoundException
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual; BUILDER_NAME = name; BUILDER_UNSTARTED = unstarted;
+    }
+
+    private static volatile boolean virtualThreadsSupported = OF_VIRTUAL != null;
+
     private final String prefix;
 
     private boolean daemonizeThreads = true;
+    private boolean virtualThreads = false;
 
     private volatile int priority; // priorities index if priorities != null
     private final int[] priorities;
@@ -65,12 +86,44 @@ public class WorkerThreadFactory implements ThreadFactory {
     @Override
     public Thread newThread(final Runnable task) {
         final String threadName = prefix + NAME_ID + threadCount.getAndIncrement();
+        if ( isVirtualThreads() ) {
+            final Thread thread = newVirtualThread(task, threadName);
+            if ( thread != null ) return thread; // virtual threads are always daemons
+        }
         final Thread thread = new Thread(group, task, threadName, 0);
         if ( isDaemonizeThreads() && ! thread.isDaemon() ) thread.setDaemon(true);
         thread.setPriority( nextThreadPriority() );
         return thread;
     }
 
+    /**
+     * @param task
+     * @param threadName
+     * @return a new (unstarted) virtual thread or null if not supported
+     */
+    private static Thread newVirtualThread(final Runnable task, final String threadName) {
+        if ( ! virtualThreadsSupported ) return null;
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, threadName);
+            return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+        }
+        catch (final InvocationTargetException e) {
+            // UnsupportedOperationException on JDK 19/20 without --enable-preview
+            virtualThreadsSupported = false; return null;
+        }
+        catch (final IllegalAccessException e) {
+            virtualThreadsSupported = false; return null;
+        }
+    }
+
+    /**
+     * @return whether virtual threads can be created (on this JVM)
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadsSupported;
+    }
+
     public boolean isDaemonizeThreads() {
         return daemonizeThreads;
     }
@@ -79,6 +132,23 @@ public class WorkerThreadFactory implements ThreadFactory {
         this.daemonizeThreads = daemonizeThreads;
     }
 
+    /**
+     * @return whether virtual threads are to be created (if supported)
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Creates virtual threads on JDK 21+ and falls back to (daemon) platform
+     * threads on older JDKs. Virtual threads do not belong to the factory's
+     * thread group and do not support priorities.
+     * @param virtualThreads
+     */
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
     protected int nextThreadPriority() {
         if (priorities != null) {
             synchronized(this) {
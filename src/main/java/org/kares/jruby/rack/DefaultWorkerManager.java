@@ -15,15 +15,22 @@
  */
 package org.kares.jruby.rack;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import javax.servlet.ServletContext;
 
 import org.jruby.Ruby;
+import org.jruby.rack.DefaultRackApplicationFactory;
 import org.jruby.rack.RackApplication;
 import org.jruby.rack.RackApplicationFactory;
 import org.jruby.rack.RackContext;
 import org.jruby.rack.RackException;
 import org.jruby.rack.RackLogger;
 import org.kares.jruby.ServletWorkerManager;
+import org.kares.jruby.WorkerConfig;
+import org.kares.jruby.WorkerRuntimePool;
+import org.kares.jruby.WorkerScript;
 
 /**
  * Default worker manager implemented on top of JRuby-Rack.
@@ -36,9 +43,63 @@ public class DefaultWorkerManager extends ServletWorkerManager {
         super(context);
     }
 
+    @Override
+    public void startup() {
+        if ( isRuntimePooled() ) getRuntimePool().start();
+        super.startup();
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        final WorkerRuntimePool runtimePool = this.runtimePool;
+        if ( runtimePool != null ) {
+            log("[" + getClass().getName() + "] destroying " + runtimePool);
+            runtimePool.destroy();
+            this.runtimePool = null;
+        }
+    }
+
     @Override
     public Ruby getRuntime() throws IllegalStateException, UnsupportedOperationException {
+        if ( isRuntimePooled() ) {
+            try {
+                return getRuntimePool().checkout();
+            }
+            catch (final IllegalStateException e) { // timed out (exhausted) or destroyed
+                throw new UnsupportedOperationException(e.getMessage(), e);
+            }
+        }
         // obtain JRuby runtime from JRuby-Rack :
+        final RackApplication app;
+        try {
+            app = getRackFactoryOrFail().getApplication();
+        }
+        catch (final RackException e) {
+            throw new UnsupportedOperationException(e); // rack/rails initialization failure
+        }
+        final Ruby runtime = checkApplication(app).getRuntime();
+        borrowedApplications.put(runtime, app);
+        return runtime;
+    }
+
+    // applications (runtimes) borrowed from JRuby-Rack's (request) factory
+    private final Map<Ruby, RackApplication> borrowedApplications = new ConcurrentHashMap<Ruby, RackApplication>();
+
+    @Override
+    protected void releaseRuntime(final Ruby runtime) {
+        final WorkerRuntimePool runtimePool = this.runtimePool;
+        if ( runtimePool != null ) {
+            runtimePool.checkin(runtime); return;
+        }
+        // NOTE: a shared application is handed out for all workers - the
+        // factory ignores it being "finished" (and it's only mapped once) :
+        final RackApplication app = borrowedApplications.remove(runtime);
+        final RackApplicationFactory appFactory = getRackFactory();
+        if ( app != null && appFactory != null ) appFactory.finishedWithApplication(app);
+    }
+
+    private RackApplicationFactory getRackFactoryOrFail() throws IllegalStateException {
         final RackApplicationFactory appFactory = getRackFactory();
         if ( appFactory == null ) {
             final String message =
@@ -48,20 +109,97 @@ public class DefaultWorkerManager extends ServletWorkerManager {
             log("[" + getClass().getName() + "] " + message);
             throw new IllegalStateException(message);
         }
-        final RackApplication app;
-        try {
-            app = appFactory.getApplication();
-        }
-        catch (final RackException e) {
-            throw new UnsupportedOperationException(e); // rack/rails initialization failure
-        }
+        return appFactory;
+    }
+
+    private static RackApplication checkApplication(final RackApplication app) {
         if ( app == null ) {
             throw new IllegalStateException("factory returned null app");
         }
         if ( app.getClass().getName().indexOf("ErrorApplication") != -1 ) {
             throw new UnsupportedOperationException("won't use error application runtime");
         }
-        return app.getRuntime();
+        return app;
+    }
+
+    private volatile Boolean runtimePooled;
+
+    public boolean isRuntimePooled() {
+        final Boolean runtimePooled = this.runtimePooled;
+        return runtimePooled != null ? runtimePooled : getConfig().isRuntimePool();
+    }
+
+    public void setRuntimePooled(final boolean runtimePooled) {
+        this.runtimePooled = runtimePooled;
+    }
+
+    private volatile WorkerRuntimePool runtimePool;
+
+    public WorkerRuntimePool getRuntimePool() {
+        if (runtimePool == null) {
+            synchronized (this) {
+                if (runtimePool == null) {
+                    runtimePool = newRuntimePool();
+                }
+            }
+        }
+        return runtimePool;
+    }
+
+    protected WorkerRuntimePool newRuntimePool() {
+        final WorkerConfig config = getConfig();
+        int workerCount = 0, maxWorkerCount = 0;
+        for ( final WorkerScript workerScript : getWorkerScripts() ) {
+            final int count = getThreadCount(workerScript);
+            workerCount += count;
+            maxWorkerCount += isAutoscale() ? Math.max(count, getThreadMax(workerScript)) : count;
+        }
+        final int minSize = config.getRuntimePoolMin() != null ? config.getRuntimePoolMin() : workerCount;
+        final int maxSize = config.getRuntimePoolMax() != null ?
+            config.getRuntimePoolMax() : Math.max(1, Math.max(minSize, maxWorkerCount));
+        final int timeout = config.getRuntimePoolTimeout();
+        final boolean bootApp = ! config.isRuntimeBootPlain();
+        // NOTE: runtimes are created using the "real" factory - a pooling or
+        // shared (decorating) factory would hand out request runtimes :
+        final RackApplicationFactory realFactory = DefaultRackApplicationFactory.getRealFactory(getRackFactoryOrFail());
+        final Map<Ruby, RackApplication> applications = new ConcurrentHashMap<Ruby, RackApplication>();
+
+        return new WorkerRuntimePool(minSize, maxSize, timeout * 1000L) {
+
+            @Override
+            protected Ruby newRuntime() throws UnsupportedOperationException {
+                if ( ! bootApp ) {
+                    if ( realFactory instanceof DefaultRackApplicationFactory ) {
+                        return ((DefaultRackApplicationFactory) realFactory).newRuntime();
+                    }
+                    log("can not boot a plain runtime with: " + realFactory + " (booting application)");
+                }
+                final RackApplication app;
+                try {
+                    app = realFactory.newApplication();
+                    app.init();
+                }
+                catch (final RackException e) {
+                    throw new UnsupportedOperationException(e); // rack/rails initialization failure
+                }
+                final Ruby runtime = checkApplication(app).getRuntime();
+                applications.put(runtime, app);
+                return runtime;
+            }
+
+            @Override
+            protected void destroyRuntime(final Ruby runtime) {
+                final RackApplication app = applications.remove(runtime);
+                if ( app != null ) app.destroy();
+                else super.destroyRuntime(runtime);
+            }
+
+            @Override
+            protected void log(final String message) {
+                DefaultWorkerManager.this.log("[" + DefaultWorkerManager.this.getClass().getName() + "] " + message);
+            }
+
+        };
     }
 
     protected RackContext getRackContext() {
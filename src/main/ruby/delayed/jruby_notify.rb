@@ -0,0 +1,24 @@
+require 'delayed_job' unless defined?(Delayed::Worker)
+require 'jruby/rack/worker/control'
+
+# Wakes up idle (JRuby) workers as jobs get enqueued (in the same JVM), meant
+# to be required by the application as well (e.g. from an initializer) since
+# jobs usually get enqueued from requests :
+#
+#   require 'delayed/jruby_notify' if defined?($servlet_context)
+#
+if defined?(Delayed::Plugin) && defined?(Delayed::Lifecycle) # DJ 3.0+
+  module Delayed
+    class JRubyNotifyPlugin < Plugin
+      callbacks do |lifecycle|
+        lifecycle.after(:enqueue) do |job|
+          queue = job.respond_to?(:queue) ? job.queue : nil
+          JRuby::Rack::Worker.notify_work(queue)
+        end
+      end
+    end
+  end
+  unless Delayed::Worker.plugins.include?(Delayed::JRubyNotifyPlugin)
+    Delayed::Worker.plugins << Delayed::JRubyNotifyPlugin
+  end
+end
@@ -1,5 +1,7 @@
 require 'java'
+require 'jruby'
 require 'delayed_job' unless defined?(Delayed::Worker)
+require 'jruby/rack/worker/control'
 
 module Delayed
 
@@ -62,7 +64,7 @@ module Delayed
 
           count = result.sum
 
-          break if @exit
+          break if stop?
 
           if count.zero?
             sleep(self.class.sleep_delay)
@@ -70,17 +72,210 @@ module Delayed
             say "#{count} jobs processed at %.4f j/s, %d failed ..." % [count / realtime, result.last]
           end
 
-          break if @exit
+          break if stop?
         end
       end
       
-      def stop?; !!@exit; end
+      def stop?; !!@exit || JRuby::Rack::Worker.stop_requested?; end
       def stop; @exit = true; end
       
+    else
+      
+      # also stop when the manager asks us to (e.g. scaling down)
+      def stop?
+        super || JRuby::Rack::Worker.stop_requested?
+      end
+      
+    end
+    
+    # Blocks while paused (by the manager) before working off jobs.
+    # @see Delayed::Worker#work_off
+    def work_off(*args)
+      return [ 0, 0 ] unless JRuby::Rack::Worker.wait_while_paused
+      @work_generation = JRuby::Rack::Worker.work_generation(work_queues)
+      super
+    end
+    
+    # Idle workers sleep (for sleep_delay) unless woken up by work being
+    # notified e.g. `JRuby::Rack::Worker.notify_work(job.queue)`.
+    # @see Kernel#sleep
+    def sleep(delay)
+      JRuby::Rack::Worker.wait_for_work(delay, work_queues, @work_generation || -1)
+    end
+    
+    # @see Delayed::Worker#run
+    def run(job)
+      result = nil
+      JRuby::Rack::Worker.job { result = super }
+      result
+    end
+    
+    # Dispatch mode (DELAYED_DISPATCH=true) - instead of each thread running
+    # it's own work_off loop a single thread (per runtime) at a time reserves
+    # jobs in batches (of read_ahead) and hands them to all worker threads
+    # (of the same runtime) through a Java queue, DB polling stays constant as
+    # threads are added.
+    def dispatch?
+      return @dispatch if defined? @dispatch
+      @dispatch = JRuby::Rack::Worker.manager &&
+        JRuby::Rack::Worker::ENV['DELAYED_DISPATCH'].to_s == 'true'
+    end
+    
+    # @see Delayed::Worker#start
+    def start
+      return super unless dispatch?
+      say "Starting job worker (dispatch)"
+      trap
+      if self.class.respond_to?(:lifecycle)
+        self.class.lifecycle.run_callbacks(:execute, self) { dispatch }
+      else
+        dispatch
+      end
     end
     
+    # How long (in millis) executors wait for a job before checking to stop.
+    DISPATCH_POLL_TIMEOUT = 1000
+    
+    @@dispatch_lock = Mutex.new
+    @@dispatch_threads = 0
+    @@dispatched = {} # job id => true (reserved and queued or running)
+    @@next_poll = 0
+    @@poll_generation = nil
+    
+    def dispatch
+      queue = self.class.dispatch_queue
+      @@dispatch_lock.synchronize { @@dispatch_threads += 1 }
+      begin
+        loop do
+          break if stop?
+          break unless JRuby::Rack::Worker.wait_while_paused
+          
+          self.class.poll_jobs(self, queue)
+          if job = queue.poll(DISPATCH_POLL_TIMEOUT)
+            begin
+              run(job)
+            ensure
+              @@dispatch_lock.synchronize { @@dispatched.delete(job.id) }
+            end
+          end
+        end
+      ensure
+        last = @@dispatch_lock.synchronize { ( @@dispatch_threads -= 1 ) == 0 }
+        self.class.release_jobs(queue) if last
+      end
+    end
+    protected :dispatch
+    
+    # The hand-off queue - jobs (and the dispatch state) belong to a runtime
+    # thus each runtime gets it's own queue.
+    def self.dispatch_queue
+      JRuby::Rack::Worker.manager.getJobQueue("delayed_job:#{JRuby.runtime.getRuntimeNumber}")
+    end
+    
+    # Reserves a batch of jobs into the queue unless another thread is polling
+    # (or there are enough queued jobs), after an empty poll waits sleep_delay
+    # unless work gets notified.
+    def self.poll_jobs(worker, queue)
+      return unless @@dispatch_lock.try_lock
+      begin
+        limit = dispatch_batch_size - queue.size
+        return if limit <= 0
+        generation = JRuby::Rack::Worker.work_generation(worker.send(:work_queues))
+        now = Time.now.to_f
+        return if now < @@next_poll && generation == @@poll_generation
+        
+        jobs = reserve_jobs(worker.dispatcher_name, limit)
+        jobs.each do |job|
+          @@dispatched[job.id] = true
+          unless queue.offer(job, 0, job.priority.to_i)
+            @@dispatched.delete(job.id); release_job(job)
+          end
+        end
+        @@poll_generation = generation
+        @@next_poll = jobs.empty? ? now + sleep_delay.to_f : now
+      ensure
+        @@dispatch_lock.unlock
+      end
+    end
+    
+    # Reserves (locks) up to limit jobs, on DJ's AR backend using a single
+    # (read_ahead) query, otherwise one by one.
+    def self.reserve_jobs(name, limit)
+      jobs = []
+      if Delayed::Job.respond_to?(:find_available)
+        Delayed::Job.find_available(name, limit, max_run_time).each do |job|
+          next if @@dispatched[job.id] # locked_by == name jobs are found again
+          jobs << job if job.lock_exclusively!(max_run_time, name)
+        end
+      else
+        dispatcher = Struct.new(:name, :read_ahead).new(name, limit)
+        limit.times do
+          break unless job = Delayed::Job.reserve(dispatcher, max_run_time)
+          jobs << job unless @@dispatched[job.id]
+        end
+      end
+      jobs
+    end
+    
+    # Releases (unlocks) jobs reserved but not started, once the last
+    # (dispatching) worker thread exits.
+    def self.release_jobs(queue)
+      java.lang.Thread.interrupted # clear a shutdown interrupt for the DB update
+      count = 0
+      while job = queue.poll(0)
+        @@dispatch_lock.synchronize { @@dispatched.delete(job.id) }
+        release_job(job); count += 1
+      end
+      logger.info "[JOB] released #{count} unstarted job(s)" if logger && count > 0
+    end
+    
+    def self.release_job(job)
+      job.unlock; job.save
+    rescue => e
+      logger.error "[JOB] failed to release job #{job.id}: #{e.inspect}" if logger
+    end
+    
+    # @see Delayed::Worker#read_ahead (DJ >= 3.0)
+    def self.dispatch_batch_size
+      Worker.respond_to?(:read_ahead) && Worker.read_ahead ? Worker.read_ahead.to_i : 5
+    end
+    
+    # The (shared) name jobs get locked by in dispatch mode.
+    def dispatcher_name
+      @dispatcher_name ||= begin
+        thread_name = " thread:#{thread_id}"
+        name.end_with?(thread_name) ? name[0...-thread_name.size] + ' dispatcher' : "#{name} dispatcher"
+      end
+    end
+    
+    # Whether the backend supports counting jobs ready to run.
+    def self.backlog?
+      defined?(Delayed::Job) && Delayed::Job.respond_to?(:ready_to_run)
+    end
+    
+    # The number of jobs ready to be run (on the given queues).
+    # @see #backlog?
+    def self.backlog(queues = nil)
+      return count_backlog(queues) unless Delayed::Job.respond_to?(:connection_pool)
+      # probed from the auto-scaler thread - return the connection when done :
+      Delayed::Job.connection_pool.with_connection { count_backlog(queues) }
+    end
+    
+    def self.count_backlog(queues)
+      jobs = Delayed::Job.ready_to_run(nil, Delayed::Worker.max_run_time)
+      jobs = jobs.where(:queue => queues) if queues && ! queues.empty?
+      jobs.count
+    end
+    private_class_method :count_backlog
+    
     protected
     
+    def work_queues
+      if defined? @queues then @queues # DJ 2.x / 3.0
+      elsif self.class.respond_to?(:queues) then self.class.queues
+      end
+    end
+    
     def trap(name = nil)
       # catch invocations from #start traps TERM and INT
       at_exit { exit! } if ! name || name.to_s == 'TERM'
@@ -90,6 +285,8 @@ module Delayed
 
 end
 
+require 'delayed/jruby_notify'
+
 Dir.chdir( Rails.root ) if defined?(Rails.root) && Dir.getwd.to_s != Rails.root.to_s
 
 if ! Delayed::Worker.backend && ! defined? Delayed::Lifecycle
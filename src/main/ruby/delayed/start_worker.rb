@@ -15,6 +15,10 @@ begin
     options[:sleep_delay] = sleep_delay.to_f
   end
   worker = Delayed::JRubyWorker.new(options)
+  if Delayed::JRubyWorker.backlog?
+    queues = options[:queues]
+    JRuby::Rack::Worker.backlog_probe { Delayed::JRubyWorker.backlog(queues) }
+  end
   worker.start
 rescue => e
   JRuby::Rack::Worker.log_error(e) || raise
@@ -0,0 +1,55 @@
+require 'jruby/rack/worker/queue'
+require 'jruby/rack/worker/logger'
+
+module JRuby
+  module Rack
+    module Worker
+      
+      # Processes jobs from an in-memory (Java) queue.
+      # @see JRuby::Rack::Worker#enqueue
+      class InMemoryWorker
+        
+        # How long to wait (in millis) for a job before checking whether to stop.
+        POLL_TIMEOUT = 1000
+        
+        attr_reader :queue
+        
+        def initialize(queue = nil)
+          @queue = ( queue || JRuby::Rack::Worker::ENV['QUEUE'] || 'default' ).to_s
+        end
+        
+        def start
+          manager = JRuby::Rack::Worker.manager
+          raise "in-memory worker needs a worker manager" unless manager
+          
+          job_queue = manager.getJobQueue(@queue)
+          JRuby::Rack::Worker.backlog_probe { job_queue.size }
+          JRuby::Rack::Worker.logger.info "*** Starting in-memory worker (queue: #{@queue})"
+          loop do
+            break unless JRuby::Rack::Worker.wait_while_paused
+            break if JRuby::Rack::Worker.stop_requested?
+            
+            begin
+              job = job_queue.poll(POLL_TIMEOUT)
+            rescue Java::JavaLang::IllegalStateException => e # enqueued from another runtime
+              JRuby::Rack::Worker.log_error(e); next
+            end
+            perform(job) if job
+          end
+        end
+        
+        protected
+        
+        def perform(job)
+          JRuby::Rack::Worker.job do
+            JRuby::Rack::Worker.perform_job( JRuby::Rack::Worker.load_job(job) ); true
+          end
+        rescue => e
+          JRuby::Rack::Worker.log_error(e)
+        end
+        
+      end
+      
+    end
+  end
+end
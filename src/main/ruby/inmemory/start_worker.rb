@@ -0,0 +1,7 @@
+require 'jruby/rack/worker/logger'
+begin
+  require 'inmemory/jruby_worker'
+  JRuby::Rack::Worker::InMemoryWorker.new.start
+rescue => e
+  JRuby::Rack::Worker.log_error(e) || raise
+end
@@ -0,0 +1,49 @@
+require 'jruby/rack/worker/queue'
+require 'jruby/rack/worker/logger'
+
+module JRuby
+  module Rack
+    module Worker
+      
+      # Processes (marshalled) jobs from the (Java) job journal.
+      # @see JRuby::Rack::Worker#enqueue_durable
+      class JournalWorker
+        
+        # How long to wait (in millis) for a job before checking whether to stop.
+        POLL_TIMEOUT = 1000
+        
+        def start
+          manager = JRuby::Rack::Worker.manager
+          raise "journal worker needs a worker manager" unless manager
+          
+          @journal = manager.getJobJournal
+          JRuby::Rack::Worker.backlog_probe { @journal.size }
+          JRuby::Rack::Worker.logger.info "*** Starting journal worker (#{@journal.getDirectory})"
+          loop do
+            break unless JRuby::Rack::Worker.wait_while_paused
+            break if JRuby::Rack::Worker.stop_requested?
+            
+            next unless entry = @journal.poll(POLL_TIMEOUT)
+            perform(entry)
+          end
+        end
+        
+        protected
+        
+        # NOTE: failed jobs are acked (logged) as well, if the worker does not
+        # get to ack (e.g. killed on shutdown) the job is replayed on startup.
+        def perform(entry)
+          begin
+            job = Marshal.load(String.from_java_bytes(entry.getPayload))
+            JRuby::Rack::Worker.job { JRuby::Rack::Worker.perform_job(job); true }
+          rescue => e
+            JRuby::Rack::Worker.log_error(e)
+          end
+          @journal.ack(entry.getId)
+        end
+        
+      end
+      
+    end
+  end
+end
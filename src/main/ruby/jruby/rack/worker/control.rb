@@ -0,0 +1,120 @@
+require 'jruby/rack/worker/env'
+
+module JRuby
+  module Rack
+    module Worker
+      
+      # Whether the worker (running on the current thread) has been asked to
+      # stop e.g. when the manager is scaling down, worker loops are expected
+      # to check this in between processing jobs.
+      def self.stop_requested?
+        manager = self.manager
+        manager ? manager.isStopRequested : false
+      end
+      
+      # Reports the worker (on the current thread) is ready to process jobs,
+      # e.g. once it's done with it's setup (used during rolling restarts).
+      def self.ready!
+        manager = self.manager
+        manager.workerReady if manager
+      end
+      
+      # Whether the worker (running on the current thread) has been paused.
+      def self.pause_requested?
+        manager = self.manager
+        manager ? manager.isPauseRequested : false
+      end
+      
+      # Blocks the current worker while it's paused (returns immediately if 
+      # not paused), meant to be called in between processing jobs.
+      # Returns false if the worker should stop instead of continuing.
+      def self.wait_while_paused
+        manager = self.manager
+        manager ? manager.awaitResume : true
+      end
+      
+      # Registers a backlog probe for the current worker - a block returning 
+      # the number of jobs ready to be processed (used when auto-scaling).
+      def self.backlog_probe(&block)
+        manager = self.manager
+        manager.setBacklogProbe(&block) if manager
+      end
+      
+      # Reports the current worker started processing a job (for metrics).
+      def self.job_started
+        manager = self.manager
+        manager.jobStarted if manager
+      end
+      
+      # Reports a job has been processed (for metrics), workers are expected
+      # to call this after each job (even if it failed).
+      def self.job_finished(success = true)
+        manager = self.manager
+        manager.jobCompleted(!!success) if manager
+      end
+      
+      # Wakes up idle workers polling the given queue (all if nil), meant to
+      # be called after enqueueing a job e.g. from a request.
+      def self.notify_work(queue = nil)
+        manager = self.manager
+        manager.notifyWork(queue && queue.to_s) if manager
+      end
+      
+      # A work notification "generation" to be taken before polling for jobs
+      # and passed to #wait_for_work so a notification is not missed.
+      def self.work_generation(queues = nil)
+        manager = self.manager
+        manager ? manager.getWorkGeneration(work_queues(queues)) : -1
+      end
+      
+      # Sleeps (up to the given seconds) until work gets notified for one of
+      # the given queues (any if nil) - a replacement for sleeping when idle.
+      # Returns true if woken up due work being notified.
+      def self.wait_for_work(seconds, queues = nil, generation = -1)
+        manager = self.manager
+        return ( sleep(seconds); false ) unless manager
+        manager.awaitWork(work_queues(queues), generation, (seconds * 1000).to_i)
+      end
+      
+      def self.work_queues(queues)
+        queues = Array(queues).compact
+        queues.empty? ? nil : queues.map(&:to_s).to_java(:string)
+      end
+      private_class_method :work_queues
+      
+      # Worker id registrations (Java) shared by all workers of the application
+      # e.g. to tell whether a Resque worker is alive when pruning.
+      def self.worker_ids
+        manager = self.manager
+        manager ? manager.getWorkerIdRegistry : Java::OrgKaresJruby::WorkerIdRegistry.getInstance
+      end
+      
+      # Job reservations (Java) shared by all workers of the application, for
+      # adapters polling a store that does not lock jobs (e.g. Navvy).
+      def self.job_reservations
+        manager = self.manager
+        manager ? manager.getJobReservations : Java::OrgKaresJruby::JobReservations.getInstance
+      end
+      
+      # Host name and process liveness (Java) without shelling out to `ps`.
+      def self.process_info
+        manager = self.manager
+        manager ? manager.getProcessInfo : Java::OrgKaresJruby::ProcessInfo.getInstance
+      end
+      
+      # Runs the given block as a job, reporting it as started/finished.
+      # The job is considered successful unless the block raises or returns
+      # false.
+      def self.job
+        job_started
+        success = false
+        begin
+          success = ( yield != false )
+        ensure
+          job_finished(success)
+        end
+      end
+      
+    end
+  end
+end
@@ -13,7 +13,14 @@ module JRuby
         end
       end
       
-      def self.manager; $worker_manager; end
+      # The manager is exported (as a global) into worker runtimes, other
+      # (e.g. request) runtimes look it up from the servlet context.
+      def self.manager
+        return $worker_manager if $worker_manager
+        if $servlet_context && $servlet_context.respond_to?(:getAttribute)
+          $servlet_context.getAttribute('jruby.worker.manager')
+        end
+      end
       
     end
   end
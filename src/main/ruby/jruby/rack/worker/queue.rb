@@ -0,0 +1,98 @@
+require 'jruby'
+require 'jruby/rack/worker/control'
+
+module JRuby
+  module Rack
+    module Worker
+      
+      # Raised when enqueueing into a full in-memory queue.
+      class QueueFull < StandardError; end
+      
+      # Raised when enqueueing from a (servlet) container with no (running)
+      # worker manager e.g. during shutdown.
+      class NotRunning < StandardError; end
+      
+      # Enqueues a job to be processed by the built-in `inmemory` worker (in
+      # this JVM), the job is expected to respond to `perform` (or `call`) :
+      #
+      #   JRuby::Rack::Worker.enqueue(WarmCacheJob.new(page))
+      #   JRuby::Rack::Worker.enqueue(:queue => 'mails', :delay => 30) { ... }
+      #
+      # Options: `:queue` ('default'), `:delay` (in seconds) and `:priority`
+      # (lower runs first, defaults to 0). NOTE: jobs are kept in memory, they
+      # are lost on shutdown.
+      #
+      # Jobs are handed to workers as is only if the workers run on the (shared)
+      # runtime they're enqueued from, otherwise (e.g. with pooled runtimes) the
+      # job is marshalled and re-created on the worker's runtime - blocks (or
+      # jobs that can not be marshalled) raise an ArgumentError in that case.
+      #
+      # Outside of a container (e.g. in a console) jobs are performed inline.
+      # Returns true if the job got enqueued, raises QueueFull if the queue is
+      # full (unless it's configured to have the caller run the job).
+      def self.enqueue(job = nil, options = {}, &block)
+        if job.is_a?(Hash) && block
+          options = job; job = nil
+        end
+        job ||= block
+        raise ArgumentError, 'no job given' unless job
+        
+        manager = enqueue_manager
+        return ( perform_job(job); false ) unless manager
+        
+        queue = manager.getJobQueue((options[:queue] || 'default').to_s)
+        delay = options[:delay] ? ( options[:delay].to_f * 1000 ).to_i : 0
+        payload = manager.isSharedRuntime(JRuby.runtime) ? job : dump_job(job)
+        return true if queue.offer(payload, delay, ( options[:priority] || 0 ).to_i)
+        
+        if queue.isCallerRuns
+          perform_job(job); false
+        else
+          raise QueueFull, "in-memory queue '#{queue.getName}' is full (capacity: #{queue.getCapacity})"
+        end
+      end
+      
+      # Enqueues a job to be processed by the built-in `journal` worker, the
+      # job is written (marshalled) to a journal on disk and survives restarts.
+      # Returns the job id (or nil if performed inline outside of a container).
+      def self.enqueue_durable(job)
+        manager = enqueue_manager
+        return ( perform_job(job); nil ) unless manager
+        
+        manager.getJobJournal.enqueue(Marshal.dump(job).to_java_bytes)
+      end
+      
+      # The manager to enqueue with, nil when there's none (in this JVM) and
+      # jobs should be performed inline.
+      def self.enqueue_manager
+        manager = self.manager
+        return manager if manager
+        if $servlet_context
+          raise NotRunning, "no (running) worker manager found, is the WorkerContextListener configured ?"
+        end
+        nil
+      end
+      private_class_method :enqueue_manager
+      
+      # Marshals a job to be performed on another (worker) runtime.
+      def self.dump_job(job)
+        Marshal.dump(job).to_java_bytes
+      rescue TypeError => e
+        raise ArgumentError, "job needs to be marshalled (workers do not share " <<
+          "this runtime) but #{job.class} can not be: #{e.message}"
+      end
+      private_class_method :dump_job
+      
+      # Re-creates a job marshalled using #enqueue (on a worker's runtime).
+      def self.load_job(payload)
+        payload.is_a?(Java::byte[]) ? Marshal.load(String.from_java_bytes(payload)) : payload
+      end
+      
+      # Performs an (in-memory or journaled) job.
+      def self.perform_job(job)
+        job.respond_to?(:perform) ? job.perform : job.call
+      end
+      
+    end
+  end
+end
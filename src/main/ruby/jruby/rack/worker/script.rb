@@ -0,0 +1,37 @@
+module JRuby
+  module Rack
+    module Worker
+      
+      # Compiles worker scripts (once per runtime) into lambdas, each worker 
+      # (thread) calling one gets it's own (top-level) local variables.
+      module Script
+        
+        # Parses the given source into a lambda.
+        def self.compile(source, file = nil)
+          eval("lambda do\n#{source}\nend", TOPLEVEL_BINDING, file || '<script>', 0)
+        end
+        
+        # Compiles a script the same way as if it was `load`-ed (resolved from 
+        # the $LOAD_PATH), falls back to loading it on every call.
+        def self.compile_file(path)
+          if file = resolve(path)
+            compile(File.read(file), file)
+          else
+            lambda { load path }
+          end
+        end
+        
+        def self.resolve(path)
+          return path if File.expand_path(path) == path && File.file?(path)
+          $LOAD_PATH.each do |dir|
+            file = File.join(dir.to_s, path)
+            return file if File.file?(file)
+          end
+          File.file?(path) ? path : nil
+        end
+        
+      end
+      
+    end
+  end
+end
@@ -1,27 +1,88 @@
+require 'jruby/rack/worker/control'
+
 unless defined?(Navvy::Job)
   raise "Navvy not configured - require 'navvy' " +
         "and the desired backend in a initializer"
 end
 
 module Navvy
+  # A thread-safe Navvy::Worker - an instance per (worker) thread.
+  #
+  # Jobs are fetched in batches (of NAVVY_BATCH_SIZE, defaults to Job.limit)
+  # and reserved before being run thus threads never pick up the same job.
   class JRubyWorker < Worker
 
+    @@running = []
+    @@running_lock = Mutex.new
+
     # a thread-safe Navvy::Worker.start
-    def self.start
+    def self.start(options = {})
+      new(options).start
+    end
+
+    # Asks all (running) workers to exit (after their current job).
+    # @see Navvy::Worker.exit!
+    def self.exit!
+      running.each(&:exit!)
+    end
+
+    # @return the workers started (and still running) in this runtime
+    def self.running
+      @@running_lock.synchronize { @@running.dup }
+    end
+
+    attr_reader :batch_size
+
+    def initialize(options = {})
+      @exit = false
+      batch_size = options[:batch_size] || JRuby::Rack::Worker::ENV['NAVVY_BATCH_SIZE']
+      @batch_size = batch_size ? batch_size.to_i : Job.limit
+      @batch_size = 1 if @batch_size < 1
+    end
+
+    def start
+      @@running_lock.synchronize { @@running << self }
       Navvy.logger.info '*** Starting ***'
 
       at_exit { exit! }
 
       loop do
-        fetch_and_run_jobs
+        break unless JRuby::Rack::Worker.wait_while_paused
 
-        break if @exit
-        
-        sleep sleep_time
+        generation = JRuby::Rack::Worker.work_generation
+        count = fetch_and_run_jobs
+
+        break if @exit || JRuby::Rack::Worker.stop_requested?
+
+        # sleeps unless woken up by JRuby::Rack::Worker.notify_work
+        JRuby::Rack::Worker.wait_for_work(self.class.sleep_time, nil, generation) if count == 0
       end
+    ensure
+      @@running_lock.synchronize { @@running.delete(self) }
     end
 
-    def self.exit!
+    # @see Navvy::Worker#fetch_and_run_jobs
+    # @return the number of jobs run
+    def fetch_and_run_jobs
+      reservations = JRuby::Rack::Worker.job_reservations
+      # jobs reserved by other threads are likely to be fetched (first) again :
+      jobs = Job.next(@batch_size + reservations.size)
+      count = 0
+      jobs.each do |job|
+        break if count >= @batch_size || @exit
+        key = "navvy:#{job.id}"
+        next unless reservations.reserve(key)
+        completed = false
+        begin
+          run_job(job); count += 1; completed = true
+        ensure
+          completed ? reservations.complete(key) : reservations.release(key)
+        end
+      end
+      count
+    end
+
+    def exit!
       return if @exit
       Navvy.logger.info '*** Exiting ***'
       @exit = true
@@ -29,5 +90,22 @@ module Navvy
       Navvy::Job.cleanup
     end
 
+    protected
+
+    def run_job(job)
+      result = nil; failed = false
+      JRuby::Rack::Worker.job do
+        result = job.run
+        ! ( failed = job.respond_to?(:failed?) && job.failed? )
+      end
+      message = "* #{job.object.to_s}.#{job.method_name}" <<
+        "(#{job.args.join(', ')}) => #{(job.exception || result).to_s}"
+      if Navvy.logger.respond_to?(:colorized_info)
+        Navvy.logger.colorized_info message, failed ? 31 : 32
+      else
+        Navvy.logger.info message
+      end
+    end
+
   end
-end
\ No newline at end of file
+end
@@ -1,5 +1,6 @@
 require 'resque' unless defined?(Resque::Worker)
 require 'logger'
+require 'jruby/rack/worker/control'
 
 module Resque
   # Thread-safe worker usable with JRuby, adapts most of the methods designed
@@ -97,6 +98,39 @@ module Resque
 
     end
 
+    # Also shutdown when the manager asks us to (e.g. scaling down).
+    # @see Resque::Worker#shutdown?
+    def shutdown?
+      super || JRuby::Rack::Worker.stop_requested?
+    end
+
+    # Tracks whether a job failed (Resque rescues job errors).
+    module JobFailure # :nodoc
+      attr_reader :failure
+      def fail(exception); @failure = exception; super; end
+    end
+
+    # @see Resque::Worker#perform
+    def perform(job, &block)
+      job.extend(JobFailure)
+      JRuby::Rack::Worker.job_started
+      begin
+        super
+      ensure
+        JRuby::Rack::Worker.job_finished(job.failure.nil?)
+      end
+    end
+
+    # The number of jobs queued on this worker's queues.
+    def backlog
+      names = if RESQUE_2x
+        @worker_queues.respond_to?(:search_order) ? @worker_queues.search_order : []
+      else
+        queues
+      end
+      names.inject(0) { |sum, queue| sum + Resque.size(queue).to_i }
+    end
+
     # @see Resque::Worker#enable_gc_optimizations
     def enable_gc_optimizations # :nodoc
       nil # we're definitely not REE
@@ -107,18 +141,30 @@ module Resque
       _term_child = @term_child
       begin
         @term_child = true # avoid the heroku warning with 1.23.0
+        @startup = true
         super
       ensure
         @term_child = _term_child
+        @startup = nil
       end
       update_native_thread_name
     end
 
     PAUSE_SLEEP = 0.1
 
+    # Also paused when the manager asks us to.
+    # @see Resque::Worker#paused?
+    def paused?
+      ( defined?(super) && super ) || JRuby::Rack::Worker.pause_requested?
+    end
+
     # @see Resque::Worker#pause
     def pause
-      sleep(PAUSE_SLEEP) # trap('CONT') makes no sense here
+      if JRuby::Rack::Worker.pause_requested?
+        JRuby::Rack::Worker.wait_while_paused # blocks until resumed
+      else # #pause_processing
+        sleep(PAUSE_SLEEP) # trap('CONT') makes no sense here
+      end
     end
 
     # @see Resque::Worker#pause_processing
@@ -175,7 +221,7 @@ module Resque
 
     # @see Resque::Worker#hostname
     def hostname
-      JRUBY ? java.net.InetAddress.getLocalHost.getHostName : super
+      JRUBY ? JRuby::Rack::Worker.process_info.getHostName : super
     end
 
     # @see #worker_thread_ids
@@ -183,21 +229,30 @@ module Resque
       JRUBY ? java.lang.Thread.currentThread.getName : nil
     end
 
+    # on startup only prune if no other worker (thread) did so recently
+    PRUNE_INTERVAL = 60 * 1000 # millis
+
     # similar to the original pruning but accounts for thread-based workers
     # @see Resque::Worker#prune_dead_workers
     def prune_dead_workers
+      return if @startup && JRUBY && ! worker_ids.tryPrune(PRUNE_INTERVAL)
       all_workers = self.class.all
       return if all_workers.empty?
-      known_workers = JRUBY ? worker_thread_ids : []
-      pids = nil, hostname = self.hostname
+      pids = nil; thread_names = nil; hostname = self.hostname; self_pid = self.pid.to_s
       all_workers.each do |worker|
         host, pid, thread, queues = self.class.split_id(worker.id)
         next if host != hostname
-        next if known_workers.include?(thread) && pid == self.pid.to_s
-        # NOTE: allow flexibility of running workers :
-        # 1. worker might run in another JVM instance
-        # 2. worker might run as a process (with MRI)
-        next if (pids ||= system_pids).include?(pid)
+        if pid == self_pid # a worker (thread) within this JVM
+          # NOTE: live threads are only enumerated once (per prune) if needed :
+          next if JRUBY && worker_ids.isThreadAlive(thread, thread_names ||= worker_ids.getLiveThreadNames)
+        else
+          # NOTE: allow flexibility of running workers :
+          # 1. worker might run in another JVM instance
+          # 2. worker might run as a process (with MRI)
+          alive = JRUBY ? JRuby::Rack::Worker.process_info.isAlive(pid.to_i) : nil
+          alive = (pids ||= system_pids).include?(pid) if alive.nil? # Java < 9
+          next if alive
+        end
         log! "Pruning dead worker: #{worker}"
         if worker.respond_to?(:unregister_worker)
           worker.unregister_worker
@@ -211,21 +266,9 @@ module Resque
 
     WORKER_THREAD_ID = 'worker'.freeze
 
-    # returns worker thread names that supposely belong to the current application
-    def worker_thread_ids
-      thread_group = java.lang.Thread.currentThread.getThreadGroup
-      threads = java.lang.reflect.Array.newInstance(
-        java.lang.Thread.java_class, thread_group.activeCount)
-      thread_group.enumerate(threads)
-      # NOTE: we shall check the name from $servlet_context.getServletContextName
-      # but that's an implementation detail of the factory currently that threads
-      # are named including their context name. thread grouping should be fine !
-      threads.map do |thread| # a convention is to name threads as "worker" :
-        thread && thread.getName.index(WORKER_THREAD_ID) ? thread.getName : nil
-      end.compact
-    end
-
     # Similar to Resque::Worker#worker_pids but without the worker.pid files.
+    # NOTE: only used on Java < 9 (or if not permitted) to tell whether a PID is
+    # alive, otherwise ProcessInfo#isAlive does so without forking a process.
     # Since this is only used to #prune_dead_workers it's fine to return PIDs
     # that have nothing to do with resque, it's only important that those PIDs
     # contain processed that are currently live on the system and perform work.
@@ -398,10 +441,8 @@ module Resque
     def update_native_thread_name
       thread = JRuby.reference(Thread.current)
       set_thread_name = Proc.new do |prefix, suffix|
-        self.class.with_global_lock do
-          count = self.class.system_registered_workers.size
-          thread.native_thread.name = "#{prefix}##{count}#{suffix}"
-        end
+        number = worker_ids.nextThreadNumber
+        thread.native_thread.name = "#{prefix}##{number}#{suffix}"
       end
       if ! name = thread.native_thread.name
         # "#{THREAD_ID}##{count}" :
@@ -412,77 +453,23 @@ module Resque
       end
     end
 
-    WORKERS_KEY = 'resque.workers'.freeze
+    def worker_ids
+      JRuby::Rack::Worker.worker_ids
+    end
 
-    # register a worked id globally (for this application)
+    # register a worked id (for this application)
     def system_register_worker # :nodoc
-      self.class.with_global_lock do
-        workers = self.class.system_registered_workers.push(self.id)
-        self.class.store_global_property(WORKERS_KEY, workers.join(','))
-      end
+      worker_ids.register(self.id)
     end
 
-    # unregister a worked id globally
+    # unregister a worked id
     def system_unregister_worker # :nodoc
-      self.class.with_global_lock do
-        workers = self.class.system_registered_workers
-        workers.delete(self.id)
-        self.class.store_global_property(WORKERS_KEY, workers.join(','))
-      end
+      worker_ids.unregister(self.id)
     end
 
     # returns all registered worker ids
     def self.system_registered_workers # :nodoc
-      workers = fetch_global_property(WORKERS_KEY)
-      ( workers || '' ).split(',')
-    end
-
-    # low-level API probably worth moving out of here :
-
-    if defined?($serlet_context) && $serlet_context
-
-      def self.fetch_global_property(key) # :nodoc
-        with_global_lock do
-          return $serlet_context.getAttribute(key)
-        end
-      end
-
-      def self.store_global_property(key, value) # :nodoc
-        with_global_lock do
-          if value.nil?
-            $serlet_context.removeAttribute(key)
-          else
-            $serlet_context.setAttribute(key, value)
-          end
-        end
-      end
-
-      def self.with_global_lock(&block) # :nodoc
-        $serlet_context.synchronized(&block)
-      end
-
-    else # no $servlet_context assume 1 app within server/JVM (e.g. mizuno)
-
-      def self.fetch_global_property(key) # :nodoc
-        with_global_lock do
-          return java.lang.System.getProperty(key)
-        end
-      end
-
-      def self.store_global_property(key, value) # :nodoc
-        with_global_lock do
-          if value.nil?
-            java.lang.System.clearProperty(key)
-          else
-            java.lang.System.setProperty(key, value)
-          end
-        end
-      end
-
-      def self.with_global_lock(&block) # :nodoc
-        java.lang.System.java_class.synchronized(&block)
-      end
-
+      JRuby::Rack::Worker.worker_ids.getWorkerIds.to_a
     end
 
     def self.split_id(worker_id, split_thread = true)
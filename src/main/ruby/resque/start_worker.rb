@@ -49,6 +49,8 @@ begin
     end
   end
 
+  JRuby::Rack::Worker.backlog_probe { worker.backlog }
+
   worker.log "Starting worker #{worker}"
 
   interval ? worker.work(interval) : worker.work
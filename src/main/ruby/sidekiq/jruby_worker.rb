@@ -1,14 +1,74 @@
 require 'sidekiq'
 require 'sidekiq/util'
+require 'jruby/rack/worker/control'
 
 module Sidekiq
   class Shutdown < Interrupt; end
   
+  # Runs a single Sidekiq::Launcher (per runtime) on a worker thread, the 
+  # processor concurrency being the (configured) worker thread count.
   class JRubyWorker
 
+    # Server middleware reporting processed jobs (for metrics).
+    class JobMetrics
+      def call(worker, msg, queue)
+        JRuby::Rack::Worker.job { yield; true }
+      end
+    end
+    
+    @@lock = Mutex.new
+    @@launcher = nil
+    
     def self.start
-      @logger = Logger.new(STDOUT)
-
+      @@lock.synchronize do
+        if @@launcher
+          logger.warn '*** Sidekiq already running (single launcher per runtime)'
+          return
+        end
+        @@launcher = launch
+      end
+      begin
+        # the launcher runs it's own processors, block until asked to stop :
+        until JRuby::Rack::Worker.stop_requested?
+          JRuby::Rack::Worker.wait_for_work(1) # woken up when retired
+        end
+      ensure
+        exit!
+      end
+    end
+    
+    def self.exit!
+      launcher = @@lock.synchronize { l = @@launcher; @@launcher = nil; l }
+      return unless launcher
+      
+      logger.info '*** Stopping Sidekiq'
+      launcher.stop
+      
+      logger.info '*** Stopping Celluloid'
+      Celluloid.shutdown
+    end
+    
+    # Sidekiq options resolved from JRuby::Rack::Worker::ENV (QUEUES/QUEUE and
+    # the worker thread count as concurrency).
+    def self.options
+      env = JRuby::Rack::Worker::ENV
+      options = Sidekiq.options.dup
+      
+      queues = ( env['QUEUES'] || env['QUEUE'] ).to_s.split(',').map(&:strip).reject(&:empty?)
+      queues = Array(options[:queues]) if queues.empty?
+      options[:queues] = queues.empty? ? [ 'default' ] : queues
+      
+      count = env['jruby.worker.sidekiq.thread.count'] || env['jruby.worker.thread.count']
+      options[:concurrency] = count.to_i if count && count.to_i > 0
+      options
+    end
+    
+    def self.logger
+      @@logger ||= Logger.new(STDOUT)
+    end
+    @@logger = nil
+    
+    def self.launch
       at_exit { exit! }
 
       require 'celluloid/autostart'
@@ -17,22 +77,18 @@ module Sidekiq
       require 'sidekiq/scheduled'
       require 'sidekiq/launcher'
 
-      options = Sidekiq.options
-      options[:queues] << 'default'
-
-      @logger.info '*** Starting Sidekiq'
-      @launcher = Sidekiq::Launcher.new(options)
-      @launcher.run
-      @logger.info '*** Sidekiq is running'
+      if Sidekiq.respond_to?(:server_middleware)
+        Sidekiq.server_middleware { |chain| chain.add JobMetrics }
+      end
+      
+      options = self.options
+      logger.info "*** Starting Sidekiq (concurrency: #{options[:concurrency]}, queues: #{options[:queues].join(',')})"
+      launcher = Sidekiq::Launcher.new(options)
+      launcher.run
+      logger.info '*** Sidekiq is running'
+      launcher
     end
-
-    def self.exit!
-      @logger.info '*** Stopping Sidekiq'
-      @launcher.stop
-
-      @logger.info '*** Stopping Celluloid'
-      Celluloid.shutdown
-    end
-
+    private_class_method :launch
+    
   end
 end
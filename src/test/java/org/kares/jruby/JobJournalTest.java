@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class JobJournalTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private JobJournal subject;
+
+    @After
+    public void closeJournal() {
+        if (subject != null) subject.close();
+    }
+
+    private JobJournal openJournal(int segmentSize) throws Exception {
+        JobJournal journal = new JobJournal(new File(tmp.getRoot(), "journal"), segmentSize);
+        journal.open();
+        return journal;
+    }
+
+    @Test
+    public void enqueuedJobsArePolledInOrder() throws Exception {
+        subject = openJournal(4096);
+        long id1 = subject.enqueue("job1".getBytes("UTF-8"));
+        long id2 = subject.enqueue("job2".getBytes("UTF-8"));
+        assertTrue(id2 > id1);
+        assertEquals(2, subject.size());
+
+        JobJournal.Entry entry = subject.poll(0);
+        assertEquals(id1, entry.getId());
+        assertEquals("job1", new String(entry.getPayload(), "UTF-8"));
+        assertEquals(1, subject.getReservedSize());
+        assertTrue(subject.ack(id1));
+        assertFalse(subject.ack(id1));
+
+        assertEquals("job2", new String(subject.poll(0).getPayload(), "UTF-8"));
+        assertNull(subject.poll(0));
+        assertTrue(subject.getSyncCount() > 0);
+    }
+
+    @Test
+    public void replaysJobsNotAcked() throws Exception {
+        subject = openJournal(4096);
+        long id1 = subject.enqueue("job1".getBytes("UTF-8"));
+        long id2 = subject.enqueue("job2".getBytes("UTF-8"));
+        subject.enqueue("job3".getBytes("UTF-8"));
+        subject.ack(subject.poll(0).getId());
+        assertEquals(id2, subject.poll(0).getId()); // reserved, not acked
+        subject.close();
+
+        subject = openJournal(4096);
+        assertEquals(2, subject.size());
+        JobJournal.Entry entry = subject.poll(0);
+        assertEquals(id2, entry.getId());
+        assertEquals("job2", new String(entry.getPayload(), "UTF-8"));
+        assertEquals("job3", new String(subject.poll(0).getPayload(), "UTF-8"));
+        assertTrue(subject.enqueue(new byte[0]) > id1 + 2);
+    }
+
+    @Test
+    public void ignoresTornRecord() throws Exception {
+        subject = openJournal(4096);
+        subject.enqueue("job1".getBytes("UTF-8"));
+        subject.enqueue("job2".getBytes("UTF-8"));
+        subject.close();
+
+        File segment = new File(tmp.getRoot(), "journal").listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(8 + 9 + 4 + 8 + 9 + 1); // corrupt the second job's payload
+            file.write('X');
+        }
+        finally {
+            file.close();
+        }
+
+        subject = openJournal(4096);
+        assertEquals(1, subject.size());
+        assertEquals("job1", new String(subject.poll(0).getPayload(), "UTF-8"));
+    }
+
+    @Test
+    public void compactsFullyAckedSegments() throws Exception {
+        subject = openJournal(1024);
+        final byte[] payload = new byte[400];
+        for (int i = 0; i < 6; i++) subject.enqueue(payload);
+        assertTrue(subject.getSegmentCount() >= 3);
+
+        JobJournal.Entry entry;
+        while ((entry = subject.poll(0)) != null) subject.ack(entry.getId());
+        assertEquals(1, subject.getSegmentCount());
+        assertTrue(subject.getCompactedCount() >= 2);
+        assertEquals(1, new File(tmp.getRoot(), "journal").listFiles().length);
+        subject.close();
+
+        subject = openJournal(1024);
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void concurrentEnqueuesAreDurable() throws Exception {
+        subject = openJournal(64 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> ids = new ArrayList<Future<Long>>();
+            for (int i = 0; i < 200; i++) {
+                final byte[] payload = ("job" + i).getBytes("UTF-8");
+                ids.add(executor.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        return subject.enqueue(payload);
+                    }
+                }));
+            }
+            for (Future<Long> id : ids) assertTrue(id.get() > 0);
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertTrue(subject.getSyncCount() <= 200);
+        subject.close();
+
+        subject = openJournal(64 * 1024);
+        assertEquals(200, subject.size());
+    }
+
+    @Test
+    public void discardsJobThatFailedToSync() throws Exception {
+        final boolean[] failForce = { true };
+        subject = new JobJournal(new File(tmp.getRoot(), "journal"), 4096) {
+            @Override
+            void force(final MappedByteBuffer buffer) {
+                if ( failForce[0] ) throw new IllegalStateException("disk full");
+                super.force(buffer);
+            }
+        };
+        subject.open();
+        try {
+            subject.enqueue("job1".getBytes("UTF-8"));
+            fail("enqueue did not fail");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("failed to sync"));
+        }
+        assertEquals(0, subject.size());
+        assertNull(subject.poll(0));
+
+        failForce[0] = false; // retried
+        subject.enqueue("job1".getBytes("UTF-8"));
+        subject.close();
+
+        subject = openJournal(4096);
+        assertEquals(1, subject.size());
+    }
+
+}
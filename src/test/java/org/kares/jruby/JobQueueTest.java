@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import org.jruby.Ruby;
+import org.jruby.javasupport.JavaUtil;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class JobQueueTest {
+
+    @Test
+    public void pollsByPriorityThenInOrder() {
+        JobQueue subject = new JobQueue("default", 10, JobQueue.Overflow.REJECT, 0);
+        assertTrue(subject.offer("low1", 0, 10));
+        assertTrue(subject.offer("high", 0, -1));
+        assertTrue(subject.offer("low2", 0, 10));
+        assertTrue(subject.offer("norm", 0, 0));
+
+        assertEquals("high", subject.poll(0));
+        assertEquals("norm", subject.poll(0));
+        assertEquals("low1", subject.poll(0));
+        assertEquals("low2", subject.poll(0));
+        assertNull(subject.poll(0));
+        assertEquals(4, subject.getEnqueuedCount());
+    }
+
+    @Test
+    public void delayedJobIsPolledOnceDue() {
+        JobQueue subject = new JobQueue("default", 10, JobQueue.Overflow.REJECT, 0);
+        final long start = System.currentTimeMillis();
+        assertTrue(subject.offer("later", 100, 0));
+        assertEquals(1, subject.getScheduledSize());
+        assertNull(subject.poll(0));
+
+        assertEquals("later", subject.poll(5000));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void rejectsOnceFull() {
+        JobQueue subject = new JobQueue("default", 2, JobQueue.Overflow.REJECT, 0);
+        assertTrue(subject.offer("job1", 0, 0));
+        assertTrue(subject.offer("job2", 1000, 0));
+        assertFalse(subject.offer("job3", 0, 0));
+        assertEquals(1, subject.getRejectedCount());
+
+        assertEquals("job1", subject.poll(0));
+        assertTrue(subject.offer("job3", 0, 0));
+    }
+
+    @Test
+    public void blocksUntilSpaceIsAvailable() throws InterruptedException {
+        final JobQueue subject = new JobQueue("default", 1, JobQueue.Overflow.BLOCK, 5000);
+        assertTrue(subject.offer("job1", 0, 0));
+
+        final Thread worker = new Thread() {
+
+            @Override
+            public void run() {
+                try { Thread.sleep(50); } catch (InterruptedException e) { return; }
+                subject.poll(0);
+            }
+
+        };
+        worker.start();
+        assertTrue(subject.offer("job2", 0, 0));
+        worker.join();
+        assertEquals("job2", subject.poll(0));
+    }
+
+    @Test
+    public void blockingRejectsOnTimeout() {
+        JobQueue subject = new JobQueue("default", 1, null, 10);
+        assertSame(JobQueue.Overflow.BLOCK, subject.getOverflow());
+        assertTrue(subject.offer("job1", 0, 0));
+        assertFalse(subject.offer("job2", 0, 0));
+        assertEquals(1, subject.getRejectedCount());
+    }
+
+    @Test
+    public void wakeAllReturnsFromPoll() throws InterruptedException {
+        final JobQueue subject = new JobQueue("default", 1, JobQueue.Overflow.REJECT, 0);
+        final Object[] polled = { "none" };
+        final Thread worker = new Thread() {
+
+            @Override
+            public void run() {
+                polled[0] = subject.poll(10 * 1000);
+            }
+
+        };
+        worker.start();
+        Thread.sleep(50);
+
+        subject.wakeAll();
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertNull(polled[0]);
+    }
+
+    @Test
+    public void workerFailsPollingJobFromAnotherRuntime() {
+        JobQueue subject = new JobQueue("default", 10, JobQueue.Overflow.REJECT, 0);
+        final Ruby runtime = Ruby.newInstance();
+        final Ruby otherRuntime = Ruby.newInstance();
+        try {
+            assertTrue(subject.offer(otherRuntime.evalScriptlet("Object.new"), 0, 0));
+            assertTrue(subject.offer(runtime.evalScriptlet("Object.new"), 0, 0));
+
+            runtime.getGlobalVariables().set("$queue", JavaUtil.convertJavaToRuby(runtime, subject));
+            new RubyWorker(runtime,
+                "begin; $queue.poll(0); rescue Java::JavaLang::IllegalStateException; $foreign = true; end\n" +
+                "$job = $queue.poll(0)"
+            ).run();
+            assertTrue( runtime.evalScriptlet("$foreign").isTrue() );
+            assertEquals( "Object", runtime.evalScriptlet("$job.class.name").toString() );
+        }
+        finally {
+            runtime.tearDown(false); otherRuntime.tearDown(false);
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class JobReservationsTest {
+
+    private final JobReservations subject = new JobReservations(60 * 1000);
+
+    @Test
+    public void reservesOncePerLiveThread() throws InterruptedException {
+        assertTrue(subject.reserve("navvy:1"));
+        assertTrue(subject.reserve("navvy:1")); // same thread
+
+        final AtomicBoolean reserved = new AtomicBoolean(true);
+        Thread other = new Thread() {
+            public void run() { reserved.set( subject.reserve("navvy:1") ); }
+        };
+        other.start(); other.join();
+        assertFalse(reserved.get());
+
+        assertTrue(subject.release("navvy:1"));
+        assertFalse(subject.isReserved("navvy:1"));
+        assertTrue(subject.reserve("navvy:1"));
+    }
+
+    @Test
+    public void completedJobIsNotReservedAgain() {
+        assertTrue(subject.reserve("navvy:2"));
+        assertTrue(subject.complete("navvy:2"));
+        assertFalse(subject.reserve("navvy:2"));
+        assertEquals(0, subject.size());
+
+        JobReservations noRetention = new JobReservations(0);
+        noRetention.reserve("navvy:2"); noRetention.complete("navvy:2");
+        assertTrue(noRetention.reserve("navvy:2"));
+    }
+
+    @Test
+    public void takesOverReservationOfDeadThread() throws InterruptedException {
+        Thread other = new Thread() {
+            public void run() { subject.reserve("navvy:3"); }
+        };
+        other.start(); other.join();
+        assertTrue(subject.isReserved("navvy:3"));
+
+        assertTrue(subject.reserve("navvy:3"));
+        assertTrue(subject.release("navvy:3"));
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ProcessInfoTest {
+
+    @Test
+    public void resolvesHostNameOnce() {
+        ProcessInfo subject = new ProcessInfo(1000);
+        String hostName = subject.getHostName();
+        assertNotNull(hostName);
+        assertSame(hostName, subject.getHostName());
+    }
+
+    @Test
+    public void currentProcessIsAlive() {
+        Assume.assumeTrue(ProcessInfo.isSupported());
+
+        ProcessInfo subject = new ProcessInfo(1000);
+        assertTrue(subject.getPid() > 0);
+        assertEquals(Boolean.TRUE, subject.isAlive(subject.getPid()));
+        assertEquals(Boolean.FALSE, subject.isAlive(Integer.MAX_VALUE));
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.jruby.Ruby;
+import org.jruby.RubyArray;
+import org.jruby.exceptions.RaiseException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RubyWorkerTest {
+
+    private Ruby runtime;
+
+    @Before
+    public void createRuntime() {
+        runtime = Ruby.newInstance();
+        runtime.evalScriptlet("$results = []");
+    }
+
+    @After
+    public void tearDownRuntime() {
+        runtime.tearDown(false);
+    }
+
+    @Test
+    public void workersSharingRuntimeCompileScriptOnce() {
+        final String script = "$results << (count = (defined?(count) && count || 0) + 1)";
+        new RubyWorker(runtime, script).run();
+        new RubyWorker(runtime, script).run();
+
+        assertEquals( 1, compiledScripts().size() );
+        // each run gets it's own (top-level) local variables :
+        assertEquals( "[1, 1]", runtime.evalScriptlet("$results.inspect").toString() );
+    }
+
+    @Test
+    public void recompilesChangedScript() {
+        new RubyWorker(runtime, "$results << 1", "worker.rb").run();
+        new RubyWorker(runtime, "$results << 2", "worker.rb").run();
+
+        assertEquals( 1, compiledScripts().size() );
+        assertEquals( "[1, 2]", runtime.evalScriptlet("$results.inspect").toString() );
+    }
+
+    @Test
+    public void compilesLoadedScriptFile() throws IOException {
+        final File file = File.createTempFile("worker", ".rb");
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write("$results << __FILE__".getBytes("UTF-8"));
+            out.close();
+
+            new RubyWorker(runtime, null, file.getAbsolutePath()).run();
+            new RubyWorker(runtime, null, file.getAbsolutePath()).run();
+
+            final List<?> results = (RubyArray) runtime.getGlobalVariables().get("$results");
+            assertEquals( 2, results.size() );
+            assertEquals( file.getAbsolutePath(), results.get(0).toString() );
+            assertEquals( 1, compiledScripts().size() );
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void lateJobReportsDoNotReviveDeadWorker() {
+        final RubyWorker worker = new RubyWorker(runtime, "nil");
+        worker.run();
+        assertEquals( WorkerState.DEAD, worker.getWorkerState() );
+
+        worker.jobStarted();
+        worker.jobCompleted(true);
+        worker.paused(false);
+        assertEquals( WorkerState.DEAD, worker.getWorkerState() );
+
+        worker.restarted(runtime);
+        assertEquals( WorkerState.STARTING, worker.getWorkerState() );
+    }
+
+    @Test
+    public void failsAsUsualOnSyntaxError() {
+        try {
+            new RubyWorker(runtime, "def broken(").run();
+            fail("expected to raise");
+        }
+        catch (RaiseException e) {
+            assertTrue( e.getMessage(), e.getMessage().contains("SyntaxError") || e.getMessage().contains("syntax") );
+        }
+    }
+
+    private Map<?, ?> compiledScripts() {
+        return (Map<?, ?>) runtime.getObject().getInternalVariables()
+            .getInternalVariable("__jruby_rack_worker_scripts__");
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jruby.Ruby;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScriptSourceCacheTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("worker", ".rb");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    static class WorkerManagerImpl extends WorkerManager {
+
+        @Override
+        protected Ruby getRuntime() { return null; }
+
+    }
+
+    @Test
+    public void reusesSourceUntilModified() throws IOException {
+        write(file, "puts 1".getBytes("UTF-8"));
+        file.setLastModified(1000000000L);
+        final ScriptSourceCache cache = new ScriptSourceCache(new WorkerManagerImpl());
+
+        final String source = cache.load(file.getAbsolutePath());
+        assertEquals( "puts 1", source );
+        assertSame( source, cache.load(file.getAbsolutePath()) );
+        assertEquals( 1, cache.getReadCount() );
+        assertEquals( 1, cache.getHitCount() );
+
+        write(file, "puts 2".getBytes("UTF-8"));
+        file.setLastModified(2000000000L);
+        assertEquals( "puts 2", cache.load(file.getAbsolutePath()) );
+        assertEquals( 2, cache.getReadCount() );
+    }
+
+    @Test
+    public void rereadsButDoesNotDecodeUnchangedContentWithUnknownModifiedTime() throws IOException {
+        final byte[] content = "puts 'hello'".getBytes("UTF-8");
+        final ScriptSourceCache cache = new ScriptSourceCache(new WorkerManagerImpl() {
+
+            @Override
+            protected InputStream openPath(String path) { return new ByteArrayInputStream(content); }
+
+            @Override
+            protected long getLastModified(String path) { return 0; }
+
+        });
+
+        final String source = cache.load("/worker.rb");
+        assertSame( source, cache.load("/worker.rb") );
+        assertEquals( 2, cache.getReadCount() );
+        assertEquals( 1, cache.getHitCount() );
+    }
+
+    @Test
+    public void returnsNullForMissingPath() throws IOException {
+        final ScriptSourceCache cache = new ScriptSourceCache(new WorkerManagerImpl());
+        assertNull( cache.load(file.getAbsolutePath() + ".missing") );
+    }
+
+    @Test
+    public void decodesUsingMagicCodingComment() throws IOException {
+        final String script = "# -*- coding: ISO-8859-2 -*-\nputs '\u010D'";
+        assertEquals( script, ScriptSourceCache.decode(script.getBytes("ISO-8859-2")) );
+        assertEquals( "puts '\u010D'", ScriptSourceCache.decode("puts '\u010D'".getBytes("UTF-8")) );
+        // unsupported encoding falls back to UTF-8
+        assertEquals( "# coding: bogus\n", ScriptSourceCache.decode("# coding: bogus\n".getBytes("UTF-8")) );
+    }
+
+    private static void write(final File file, final byte[] bytes) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+}
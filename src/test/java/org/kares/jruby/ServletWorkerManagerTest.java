@@ -17,15 +17,24 @@ package org.kares.jruby;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.servlet.ServletContext;
 
 import org.jruby.Ruby;
@@ -33,6 +42,9 @@ import org.jruby.RubyInstanceConfig;
 import org.jruby.javasupport.JavaEmbedUtils;
 import org.jruby.runtime.builtin.IRubyObject;
 
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -53,6 +65,20 @@ public class ServletWorkerManagerTest {
         }
         
         final Collection<Ruby> runtimes = new ArrayList<Ruby>();
+        final Collection<Ruby> released = new ArrayList<Ruby>();
+        final Collection<RubyWorker> created = new ArrayList<RubyWorker>();
+
+        @Override
+        protected void releaseRuntime(final Ruby runtime) {
+            released.add(runtime);
+        }
+
+        @Override
+        protected RubyWorker newRubyWorker(final Ruby runtime, final String script, final String fileName) {
+            final RubyWorker worker = super.newRubyWorker(runtime, script, fileName);
+            created.add(worker);
+            return worker;
+        }
         
         @Override
         protected Ruby getRuntime() {
@@ -106,6 +132,16 @@ public class ServletWorkerManagerTest {
         verify( mockServletContext(), atLeastOnce() ).log( contains("no worker script to execute") );
     }
     
+    @Test
+    public void publishesManagerAsContextAttributeWhileRunning() {
+        subject.startup();
+        verify( mockServletContext() ).setAttribute( ServletWorkerManager.CONTEXT_ATTRIBUTE, subject );
+
+        when( mockServletContext().getAttribute( ServletWorkerManager.CONTEXT_ATTRIBUTE ) ).thenReturn( subject );
+        subject.shutdown();
+        verify( mockServletContext() ).removeAttribute( ServletWorkerManager.CONTEXT_ATTRIBUTE );
+    }
+
     @Test
     public void startupShouldNotWarnIfThereIsAWorkerConfigured1() throws UnsupportedEncodingException {
         when( mockServletContext().getInitParameter( "jruby.worker" ) ).thenReturn( "Delayed::Job" );
@@ -221,6 +257,71 @@ public class ServletWorkerManagerTest {
         }
     }
 
+    @Test
+    public void startsConfiguredAmountOfThreadsInParallel() {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn( "nil" );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "4" );
+        when( mockServletContext().getInitParameter( WorkerManager.STARTUP_PARALLEL_KEY ) ).thenReturn( "true" );
+        when( mockServletContext().getInitParameter( WorkerManager.STARTUP_CONCURRENCY_KEY ) ).thenReturn( "2" );
+
+        createSubject();
+
+        final List<Thread> createdThreads = Collections.synchronizedList(new ArrayList<Thread>());
+        ThreadFactory threadFactory = subject.newThreadFactory();
+        threadFactory = new MemoThreadFactory( threadFactory, createdThreads );
+
+        subject.setThreadFactory(threadFactory);
+
+        subject.startup();
+
+        assertTrue( subject.isParallelStartup() );
+        assertEquals( 4, createdThreads.size() );
+        assertEquals( 4, subject.workers.size() );
+        verify( mockServletContext(), atLeastOnce() ).log( contains("started 4 worker(s) in parallel") );
+    }
+
+    @Test
+    public void startsThreadsWithPerWorkerCountAndPriority() {
+        when( mockServletContext().getInitParameter( WorkerManager.WORKER_KEY ) ).thenReturn( "delayed_job, Delayed" );
+        when( mockServletContext().getInitParameter( "jruby.worker.delayed_job.thread.count" ) ).thenReturn( "3" );
+        when( mockServletContext().getInitParameter( "jruby.worker.delayed.thread.priority" ) ).thenReturn( "MIN" );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "1" );
+
+        createSubject();
+
+        List<WorkerScript> workerScripts = subject.getWorkerScripts();
+        assertEquals( 2, workerScripts.size() );
+        assertEquals( "delayed_job", workerScripts.get(0).getId() );
+        assertEquals( Integer.valueOf(3), workerScripts.get(0).getThreadCount() );
+        assertNull( workerScripts.get(0).getThreadPriority() );
+        assertEquals( "Delayed", workerScripts.get(1).getId() );
+        assertNull( workerScripts.get(1).getThreadCount() );
+        assertEquals( Integer.valueOf(Thread.MIN_PRIORITY), workerScripts.get(1).getThreadPriority() );
+
+        subject.startup();
+
+        assertEquals( 4, subject.workers.size() );
+        int minPriority = 0;
+        for ( Thread thread : subject.workers.getThreads() ) {
+            if ( thread.getPriority() == Thread.MIN_PRIORITY ) minPriority++;
+        }
+        assertEquals( 1, minPriority );
+    }
+
+    @Test
+    public void startsSingleSidekiqThread() {
+        when( mockServletContext().getInitParameter( WorkerManager.WORKER_KEY ) ).thenReturn( "sidekiq" );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "5" );
+
+        createSubject();
+
+        List<WorkerScript> workerScripts = subject.getWorkerScripts();
+        assertEquals( 1, workerScripts.size() );
+        assertEquals( Integer.valueOf(1), workerScripts.get(0).getThreadCount() );
+        assertEquals( Integer.valueOf(1), workerScripts.get(0).getThreadMax() );
+        verify( mockServletContext() ).log( contains("single sidekiq launcher (concurrency: 5)") );
+    }
+
     @Test
     public void stopsAllStartedThreads1() {
         when( mockServletContext().getServletContextName() ).thenReturn( "TheTestApp" );
@@ -270,6 +371,380 @@ public class ServletWorkerManagerTest {
         }
     }
 
+    private static final String STUCK_WORKER_SCRIPT =
+        "loop do\n" +
+        "  begin\n" +
+        "    java.lang.Thread.sleep(50)\n" +
+        "  rescue java.lang.InterruptedException\n" +
+        "  end\n" +
+        "end";
+
+    @Test
+    public void reportsWorkersThatMissTheShutdownDeadline() {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn( STUCK_WORKER_SCRIPT );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "3" );
+        when( mockServletContext().getInitParameter( WorkerManager.SHUTDOWN_TIMEOUT_KEY ) ).thenReturn( "500" );
+
+        final List<Thread> createdThreads = new ArrayList<Thread>();
+        subject.setThreadFactory( new MemoThreadFactory( subject.newThreadFactory(), createdThreads ) );
+        subject.startup();
+
+        final long start = System.currentTimeMillis();
+        subject.shutdown();
+        final long elapsed = System.currentTimeMillis() - start;
+        assertTrue( "took: " + elapsed + "ms", elapsed < 3 * 500 ); // a single deadline
+
+        verify( mockServletContext(), times(3) ).log( contains("did not stop within 500ms") );
+        verify( mockServletContext(), atLeastOnce() ).log( contains("\tat ") );
+        verify( mockServletContext() ).log( contains("(3 did not stop)") );
+        for ( Thread thread : createdThreads ) thread.interrupt(); // still looping
+    }
+
+    @Test
+    public void raisesInWorkersThatMissTheShutdownDeadline() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn( STUCK_WORKER_SCRIPT );
+        when( mockServletContext().getInitParameter( WorkerManager.SHUTDOWN_TIMEOUT_KEY ) ).thenReturn( "200" );
+        when( mockServletContext().getInitParameter( WorkerManager.SHUTDOWN_ESCALATE_KEY ) ).thenReturn( "true" );
+
+        final List<Thread> createdThreads = new ArrayList<Thread>();
+        subject.setThreadFactory( new MemoThreadFactory( subject.newThreadFactory(), createdThreads ) );
+        subject.startup();
+        Thread.sleep(100); // let the script start looping
+
+        subject.shutdown();
+
+        verify( mockServletContext() ).log( contains("raising Interrupt in worker") );
+        verify( mockServletContext(), never() ).log( contains("leaking worker thread") );
+        assertFalse( createdThreads.get(0).isAlive() );
+    }
+
+    @Test
+    public void pausesAndResumesWorkers() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn(
+            "require 'jruby/rack/worker/control'\n" +
+            "$passes = 0\n" +
+            "loop do\n" +
+            "  break unless JRuby::Rack::Worker.wait_while_paused\n" +
+            "  $passes += 1; sleep 0.01\n" +
+            "end"
+        );
+        when( mockServletContext().getInitParameter( WorkerManager.SHUTDOWN_TIMEOUT_KEY ) ).thenReturn( "2000" );
+
+        final List<Thread> createdThreads = new ArrayList<Thread>();
+        subject.setThreadFactory( new MemoThreadFactory( subject.newThreadFactory(), createdThreads ) );
+        subject.startup();
+
+        final RubyWorker worker = subject.workers.getWorkers().iterator().next();
+        subject.pause(null); // custom script (no id)
+        assertTrue( subject.isPaused(null) );
+        for ( int i = 0; i < 100 && worker.getWorkerState() != WorkerState.PAUSED; i++ ) Thread.sleep(50);
+        assertEquals( WorkerState.PAUSED, worker.getWorkerState() );
+
+        final long passes = passes(worker);
+        Thread.sleep(100);
+        assertEquals( passes, passes(worker) );
+
+        subject.resume(null);
+        for ( int i = 0; i < 100 && passes(worker) == passes; i++ ) Thread.sleep(50);
+        assertTrue( passes(worker) > passes );
+
+        subject.pauseAll();
+        for ( int i = 0; i < 100 && worker.getWorkerState() != WorkerState.PAUSED; i++ ) Thread.sleep(50);
+        assertEquals( WorkerState.PAUSED, worker.getWorkerState() );
+
+        subject.shutdown(); // while paused
+        assertFalse( createdThreads.get(0).isAlive() );
+        verify( mockServletContext(), never() ).log( contains("did not stop") );
+    }
+
+    private static long passes(final RubyWorker worker) {
+        return (Long) JavaEmbedUtils.rubyToJava( worker.getRuntime().getGlobalVariables().get("$passes") );
+    }
+
+    @Test
+    public void reloadsChangedScriptRestartingWorkers() throws Exception {
+        final File file = File.createTempFile("worker", ".rb");
+        try {
+            writeScriptVersion(file, 1);
+            when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_PATH_KEY ) ).thenReturn( "/worker.rb" );
+            when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_WATCH_KEY ) ).thenReturn( "true" );
+            when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "2" );
+            when( mockServletContext().getRealPath( "/worker.rb" ) ).thenReturn( file.getAbsolutePath() );
+            when( mockServletContext().getResourceAsStream( "/worker.rb" ) ).thenAnswer(new Answer<InputStream>() {
+                public InputStream answer(InvocationOnMock invocation) throws Throwable {
+                    return new FileInputStream(file);
+                }
+            });
+
+            subject.startup();
+            assertEquals( 2, subject.workers.size() );
+            final Set<RubyWorker> initial = new HashSet<RubyWorker>(subject.workers.getWorkers());
+
+            writeScriptVersion(file, 2);
+            file.setLastModified(file.lastModified() + 2000);
+
+            for ( int i = 0; i < 200 && ! Collections.disjoint(initial, subject.workers.getWorkers()); i++ ) Thread.sleep(50);
+            assertTrue( Collections.disjoint(initial, subject.workers.getWorkers()) );
+            assertEquals( 2, subject.workers.size() );
+            for ( RubyWorker worker : subject.workers.getWorkers() ) {
+                for ( int i = 0; i < 100 && worker.getRuntime().getGlobalVariables().get("$version").isNil(); i++ ) {
+                    Thread.sleep(50);
+                }
+                assertEquals( "2", worker.getRuntime().getGlobalVariables().get("$version").toString() );
+            }
+            verify( mockServletContext() ).log( contains("reloaded script: '/worker.rb' restarting 2 worker(s)") );
+        }
+        finally {
+            subject.shutdown();
+            file.delete();
+        }
+    }
+
+    private static final String READY_WORKER_SCRIPT =
+        "require 'jruby/rack/worker/control'\n" +
+        "if java.lang.System.getProperty('test.worker.not.ready')\n" +
+        "  # never reports ready (stop_requested? would) but exits once stopped :\n" +
+        "  java.lang.Thread.sleep(10) until Java::OrgKaresJruby::RubyWorker.current.isStopped\n" +
+        "else\n" +
+        "  loop { break if JRuby::Rack::Worker.stop_requested?; sleep 0.01 }\n" +
+        "end";
+
+    @Test
+    public void restartsWorkersInBatches() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn( READY_WORKER_SCRIPT );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "3" );
+
+        subject.startup();
+        final Set<RubyWorker> initial = new HashSet<RubyWorker>(subject.workers.getWorkers());
+        assertEquals( 3, initial.size() );
+
+        assertEquals( 3, subject.restartWorkers(null, 2) );
+
+        assertEquals( 3, subject.workers.size() );
+        assertTrue( Collections.disjoint(initial, subject.workers.getWorkers()) );
+        for ( RubyWorker worker : subject.workers.getWorkers() ) assertTrue( worker.isReady() );
+        for ( RubyWorker worker : initial ) assertEquals( WorkerState.DEAD, worker.getWorkerState() );
+        subject.shutdown();
+    }
+
+    @Test
+    public void stopsRestartingWhenNewWorkerIsNotReady() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn( READY_WORKER_SCRIPT );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "2" );
+        when( mockServletContext().getInitParameter( WorkerManager.READY_TIMEOUT_KEY ) ).thenReturn( "300" );
+
+        subject.startup();
+        final Set<RubyWorker> initial = new HashSet<RubyWorker>(subject.workers.getWorkers());
+
+        System.setProperty("test.worker.not.ready", "true");
+        try {
+            assertEquals( 0, subject.restartWorkers(null, 0) );
+        }
+        finally {
+            System.clearProperty("test.worker.not.ready");
+        }
+
+        assertEquals( 2, subject.workers.size() ); // surged worker stopped
+        assertEquals( initial, new HashSet<RubyWorker>(subject.workers.getWorkers()) );
+        for ( RubyWorker worker : initial ) assertFalse( worker.isStopped() );
+        verify( mockServletContext() ).log( contains("not ready within 300ms") );
+        subject.shutdown();
+    }
+
+    @Test
+    public void keepsOutdatedWorkerThatDoesNotStop() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn(
+            "require 'jruby/rack/worker/control'\n" +
+            "stubborn = java.lang.System.getProperty('test.worker.stubborn')\n" +
+            "loop do\n" +
+            "  break if JRuby::Rack::Worker.stop_requested? && ( ! stubborn || java.lang.System.getProperty('test.worker.released') )\n" +
+            "  sleep 0.01\n" +
+            "end"
+        );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "2" );
+        when( mockServletContext().getInitParameter( WorkerManager.SHUTDOWN_TIMEOUT_KEY ) ).thenReturn( "300" );
+
+        System.setProperty("test.worker.stubborn", "true");
+        try {
+            subject.startup();
+            final Set<RubyWorker> initial = new HashSet<RubyWorker>(subject.workers.getWorkers());
+            for ( RubyWorker worker : initial ) worker.awaitReady(5, TimeUnit.SECONDS);
+            System.clearProperty("test.worker.stubborn");
+
+            assertEquals( 0, subject.restartWorkers(null, 0) );
+
+            assertEquals( 2, subject.workers.size() ); // replacement stopped
+            assertTrue( subject.workers.getWorkers().containsAll(initial) );
+            verify( mockServletContext() ).log( contains("did not stop, keeping it") );
+        }
+        finally {
+            System.setProperty("test.worker.released", "true");
+            subject.shutdown();
+            System.clearProperty("test.worker.stubborn");
+            System.clearProperty("test.worker.released");
+        }
+    }
+
+    @Test
+    public void escalatesShutdownOfWorkerThatDoesNotStop() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn( "loop { sleep 0.01 }" );
+        when( mockServletContext().getInitParameter( WorkerManager.SHUTDOWN_TIMEOUT_KEY ) ).thenReturn( "200" );
+        when( mockServletContext().getInitParameter( WorkerManager.SHUTDOWN_ESCALATE_KEY ) ).thenReturn( "true" );
+
+        subject.startup();
+        final RubyWorker worker = subject.workers.getWorkers().iterator().next();
+        final Thread workerThread = subject.workers.getThread(worker);
+        subject.shutdown();
+
+        workerThread.join(5000);
+        assertFalse( workerThread.isAlive() );
+        verify( mockServletContext() ).log( contains("raising Interrupt in worker") );
+    }
+
+    @Test
+    public void doesNotReleaseRuntimeOfLeakedWorker() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn(
+            "loop { break if java.lang.System.getProperty('test.worker.released'); sleep 0.01 }"
+        );
+        when( mockServletContext().getInitParameter( WorkerManager.SHUTDOWN_TIMEOUT_KEY ) ).thenReturn( "200" );
+
+        subject.startup();
+        final Thread workerThread = subject.workers.getThreads().get(0);
+        try {
+            subject.shutdown();
+
+            assertTrue( workerThread.isAlive() );
+            assertTrue( subject.released.isEmpty() );
+            verify( mockServletContext() ).log( contains("leaking worker thread") );
+        }
+        finally {
+            System.setProperty("test.worker.released", "true");
+            workerThread.join(5000);
+            System.clearProperty("test.worker.released");
+        }
+    }
+
+    private static void writeScriptVersion(final File file, final int version) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write((
+                "require 'jruby/rack/worker/control'\n" +
+                "$version = " + version + "\n" +
+                "loop { break if JRuby::Rack::Worker.stop_requested?; sleep 0.01 }"
+            ).getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void restartsFailingWorkerUpToTheRestartBudget() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn( "raise 'failing worker'" );
+        when( mockServletContext().getInitParameter( WorkerManager.RESTART_KEY ) ).thenReturn( "true" );
+        when( mockServletContext().getInitParameter( WorkerManager.RESTART_MAX_KEY ) ).thenReturn( "2" );
+        when( mockServletContext().getInitParameter( WorkerManager.RESTART_DELAY_KEY ) ).thenReturn( "10" );
+
+        createSubject();
+
+        final List<Thread> createdThreads = new ArrayList<Thread>();
+        ThreadFactory threadFactory = subject.newThreadFactory();
+        threadFactory = new MemoThreadFactory( threadFactory, createdThreads );
+        subject.setThreadFactory(threadFactory);
+
+        subject.startup();
+
+        createdThreads.get(0).join(5000);
+        assertFalse( createdThreads.get(0).isAlive() );
+
+        RubyWorker worker = subject.created.iterator().next();
+        assertEquals( 2, worker.getRestartCount() );
+        assertNotNull( worker.getLastFailure() );
+        assertTrue( worker.getLastFailure().toString(), worker.getLastFailure().toString().contains("failing worker") );
+        verify( mockServletContext(), times(2) ).log( contains("- restarting in") );
+        verify( mockServletContext(), times(1) ).log( contains("- not restarting") );
+        // given up on - no longer registered :
+        assertEquals( 0, subject.workers.size() );
+        assertTrue( subject.released.contains( worker.getRuntime() ) );
+    }
+
+    @Test
+    public void restartsWorkerThatReturned() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn( "nil" );
+        when( mockServletContext().getInitParameter( WorkerManager.RESTART_KEY ) ).thenReturn( "true" );
+        when( mockServletContext().getInitParameter( WorkerManager.RESTART_MAX_KEY ) ).thenReturn( "1" );
+        when( mockServletContext().getInitParameter( WorkerManager.RESTART_DELAY_KEY ) ).thenReturn( "1" );
+
+        createSubject();
+
+        final List<Thread> createdThreads = new ArrayList<Thread>();
+        ThreadFactory threadFactory = subject.newThreadFactory();
+        threadFactory = new MemoThreadFactory( threadFactory, createdThreads );
+        subject.setThreadFactory(threadFactory);
+
+        subject.startup();
+
+        createdThreads.get(0).join(5000);
+
+        RubyWorker worker = subject.created.iterator().next();
+        assertEquals( 1, worker.getRestartCount() );
+        assertNull( worker.getLastFailure() );
+    }
+
+    @Test
+    public void workerRegistersBacklogProbe() throws InterruptedException {
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn(
+            "require 'jruby/rack/worker/control'\n" +
+            "JRuby::Rack::Worker.backlog_probe { 42 }"
+        );
+
+        final List<Thread> createdThreads = new ArrayList<Thread>();
+        subject.setThreadFactory( new MemoThreadFactory( subject.newThreadFactory(), createdThreads ) );
+        subject.startup();
+        createdThreads.get(0).join(5000);
+
+        RubyWorker worker = subject.workers.getWorkers().iterator().next();
+        BacklogProbe probe = worker.getWorkerScript().getBacklogProbe();
+        assertNotNull( probe );
+        assertEquals( 42, probe.getBacklog() );
+    }
+
+    @Test
+    public void registersMBeansReportingJobMetrics() throws Exception {
+        when( mockServletContext().getServletContextName() ).thenReturn( "mbean-app" );
+        when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn(
+            "require 'jruby/rack/worker/control'\n" +
+            "JRuby::Rack::Worker.job { true }\n" +
+            "JRuby::Rack::Worker.job_started\n" +
+            "JRuby::Rack::Worker.job_finished(false)"
+        );
+
+        final List<Thread> createdThreads = new ArrayList<Thread>();
+        subject = new ServletWorkerManagerImpl( mockServletContext() );
+        subject.setThreadFactory( new MemoThreadFactory( subject.newThreadFactory(), createdThreads ) );
+        subject.startup();
+        createdThreads.get(0).join(5000);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = subject.getObjectName();
+        assertNotNull( name );
+        assertEquals( "mbean-app", name.getKeyProperty("name") .replace("\"", "") );
+        assertEquals( 2L, server.getAttribute(name, "JobsProcessed") );
+        assertEquals( 1L, server.getAttribute(name, "JobsFailed") );
+        assertNotNull( server.getAttribute(name, "LastJobTime") );
+
+        final Set<ObjectName> workerNames = server.queryNames(new ObjectName(name.getCanonicalName() + ",worker=*"), null);
+        assertEquals( 1, workerNames.size() );
+        final ObjectName workerName = workerNames.iterator().next();
+        assertEquals( "DEAD", server.getAttribute(workerName, "State") );
+        assertEquals( 2L, server.getAttribute(workerName, "JobsProcessed") );
+        assertEquals( 1L, server.getAttribute(workerName, "JobsFailed") );
+
+        subject.shutdown();
+        assertFalse( server.isRegistered(name) );
+        assertFalse( server.isRegistered(workerName) );
+    }
+
     @Test
     public void exportedItselfIntoTheRuntime() throws UnsupportedEncodingException {
         when( mockServletContext().getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn( "nil" );
@@ -277,13 +752,58 @@ public class ServletWorkerManagerTest {
         subject.setExported(true);
         subject.startup();
 
-        RubyWorker worker = subject.workers.keySet().iterator().next();
+        RubyWorker worker = subject.workers.getWorkers().iterator().next();
         IRubyObject workerManagerProxy = worker.runtime.evalScriptlet("$worker_manager");
         assertNotNull("$worker_manager not exported", workerManagerProxy);
         Object workerManager = JavaEmbedUtils.rubyToJava(workerManagerProxy);
         assertEquals(subject, workerManager);
     }
     
+    @Test
+    public void resolvesParametersOnce() {
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "3" );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_PRIORITY_KEY ) ).thenReturn( "FAST" );
+
+        for ( int i = 0; i < 3; i++ ) {
+            assertEquals( Integer.valueOf(3), subject.getThreadCount() );
+            assertEquals( Integer.valueOf(Thread.NORM_PRIORITY), subject.getThreadPriority() );
+            assertFalse( subject.shouldUseServletLogger() );
+        }
+
+        verify( servletContext, times(1) ).getInitParameter( WorkerManager.THREAD_COUNT_KEY );
+        verify( servletContext, times(1) ).getInitParameter( WorkerManager.FORCE_USE_SERVLET_LOGGER );
+        verify( servletContext, times(1) ).log( contains("could not parse " + WorkerManager.THREAD_PRIORITY_KEY) );
+    }
+
+    @Test
+    public void reloadsConfigNotifyingListeners() {
+        when( mockServletContext().getInitParameter( WorkerManager.WORKER_KEY ) ).thenReturn( "resque" );
+        when( mockServletContext().getInitParameter( "jruby.worker.resque.thread.count" ) ).thenReturn( "2" );
+        final WorkerConfig config = subject.getConfig();
+        assertEquals( Integer.valueOf(2), config.getScriptConfig("resque").getThreadCount() );
+        assertNull( config.getScriptConfig("navvy").getThreadCount() );
+
+        final List<WorkerConfig> changes = new ArrayList<WorkerConfig>();
+        subject.addConfigListener(new WorkerConfigListener() {
+
+            @Override
+            public void configChanged(WorkerConfig previous, WorkerConfig current) {
+                changes.add(previous); changes.add(current);
+            }
+
+        });
+        when( mockServletContext().getInitParameter( "jruby.worker.resque.thread.count" ) ).thenReturn( "4" );
+        subject.setShutdownTimeout(1000); // explicitly set - not re-resolved
+        subject.reloadConfig();
+
+        assertEquals( 2, changes.size() );
+        assertSame( config, changes.get(0) );
+        assertSame( subject.getConfig(), changes.get(1) );
+        assertEquals( Integer.valueOf(2), config.getScriptConfig("resque").getThreadCount() );
+        assertEquals( Integer.valueOf(4), subject.getConfig().getScriptConfig("resque").getThreadCount() );
+        assertEquals( 1000, subject.getShutdownTimeout() );
+    }
+
     /**
      * =============================== Helpers ===============================
      */
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WorkNotifierTest {
+
+    private final WorkNotifier subject = new WorkNotifier();
+
+    @Test
+    public void awaitWorkTimesOutWithoutNotification() throws InterruptedException {
+        assertFalse(subject.awaitWork(new String[] { "mails" }, -1, 10));
+    }
+
+    @Test
+    public void notificationSinceGenerationIsNotMissed() throws InterruptedException {
+        final String[] queues = { "mails" };
+        final long generation = subject.getGeneration(queues);
+        subject.notifyWork("mails"); // while "polling"
+
+        final long start = System.nanoTime();
+        assertTrue(subject.awaitWork(queues, generation, 5000));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertFalse(subject.awaitWork(queues, subject.getGeneration(queues), 10));
+    }
+
+    @Test
+    public void notifyWorkWakesUpWaitingWorker() throws InterruptedException {
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final AtomicBoolean notified = new AtomicBoolean();
+        final Thread worker = new Thread() {
+
+            @Override
+            public void run() {
+                final String[] queues = { "mails" };
+                final long generation = subject.getGeneration(queues);
+                waiting.countDown();
+                try {
+                    notified.set( subject.awaitWork(queues, generation, 10 * 1000) );
+                }
+                catch (InterruptedException e) { /* fail */ }
+            }
+
+        };
+        worker.start();
+        waiting.await();
+
+        subject.notifyWork("images"); // not our queue
+        worker.join(100);
+        assertTrue(worker.isAlive());
+
+        subject.notifyWork(null); // any queue
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertTrue(notified.get());
+    }
+
+    @Test
+    public void wakeAllReturnsWithoutWork() throws InterruptedException {
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final AtomicBoolean notified = new AtomicBoolean(true);
+        final Thread worker = new Thread() {
+
+            @Override
+            public void run() {
+                waiting.countDown();
+                try {
+                    notified.set( subject.awaitWork(null, -1, 10 * 1000) );
+                }
+                catch (InterruptedException e) { /* fail */ }
+            }
+
+        };
+        worker.start();
+        waiting.await();
+        Thread.sleep(50);
+
+        subject.wakeAll();
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertFalse(notified.get());
+    }
+
+}
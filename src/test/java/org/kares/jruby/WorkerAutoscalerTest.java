@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class WorkerAutoscalerTest {
+
+    private ServletWorkerManagerTest.ServletWorkerManagerImpl manager;
+    private WorkerScript workerScript;
+    private final AtomicLong backlog = new AtomicLong(0);
+
+    @Before
+    public void startManager() {
+        ServletContext servletContext = mock(ServletContext.class);
+        when( servletContext.getInitParameter( WorkerManager.SCRIPT_KEY ) ).thenReturn(
+            "sleep(0.01) until $worker_manager.isStopRequested"
+        );
+        when( servletContext.getInitParameter( WorkerManager.RESTART_MAX_KEY ) ).thenReturn( "1" );
+        manager = new ServletWorkerManagerTest.ServletWorkerManagerImpl(servletContext);
+        manager.startup();
+
+        workerScript = manager.workers.getWorkers().iterator().next().getWorkerScript();
+        workerScript.setBacklogProbe(new BacklogProbe() {
+
+            @Override
+            public long getBacklog() { return backlog.get(); }
+
+        });
+    }
+
+    @After
+    public void stopManager() {
+        manager.shutdown();
+        for ( org.jruby.Ruby runtime : manager.runtimes ) runtime.tearDown(false);
+    }
+
+    @Test
+    public void scalesUpToMaxBasedOnBacklog() {
+        WorkerAutoscaler autoscaler = new WorkerAutoscaler(manager, 0, 10, 1);
+        WorkerAutoscaler.ScriptScaler scaler = new WorkerAutoscaler.ScriptScaler(workerScript, 1, 3);
+
+        backlog.set(5);
+        autoscaler.scale(scaler, System.currentTimeMillis());
+        assertEquals(1, manager.getActiveWorkers(workerScript).size());
+
+        backlog.set(25);
+        autoscaler.scale(scaler, System.currentTimeMillis());
+        assertEquals(3, manager.getActiveWorkers(workerScript).size());
+
+        backlog.set(1000);
+        autoscaler.scale(scaler, System.currentTimeMillis());
+        assertEquals(3, manager.getActiveWorkers(workerScript).size());
+    }
+
+    @Test
+    public void scalesDownCooperativelyOneWorkerAtATime() throws InterruptedException {
+        WorkerAutoscaler autoscaler = new WorkerAutoscaler(manager, 0, 10, 1);
+        WorkerAutoscaler.ScriptScaler scaler = new WorkerAutoscaler.ScriptScaler(workerScript, 1, 3);
+
+        backlog.set(100);
+        autoscaler.scale(scaler, System.currentTimeMillis());
+        assertEquals(3, manager.workers.size());
+
+        backlog.set(0);
+        autoscaler.scale(scaler, System.currentTimeMillis());
+        assertEquals(2, manager.getActiveWorkers(workerScript).size());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( manager.workers.size() > 2 && System.currentTimeMillis() < deadline ) {
+            Thread.sleep(20);
+            manager.reapWorkers();
+        }
+        assertEquals(2, manager.workers.size());
+
+        autoscaler.scale(scaler, System.currentTimeMillis());
+        assertEquals(1, manager.getActiveWorkers(workerScript).size());
+        autoscaler.scale(scaler, System.currentTimeMillis());
+        assertEquals(1, manager.getActiveWorkers(workerScript).size());
+    }
+
+    @Test
+    public void respectsCooldownBetweenScalingChanges() {
+        WorkerAutoscaler autoscaler = new WorkerAutoscaler(manager, 60 * 1000, 10, 1);
+        WorkerAutoscaler.ScriptScaler scaler = new WorkerAutoscaler.ScriptScaler(workerScript, 1, 3);
+        final long now = System.currentTimeMillis();
+
+        backlog.set(15);
+        autoscaler.scale(scaler, now);
+        assertEquals(2, manager.getActiveWorkers(workerScript).size());
+
+        backlog.set(100);
+        autoscaler.scale(scaler, now + 1000);
+        assertEquals(2, manager.getActiveWorkers(workerScript).size());
+
+        autoscaler.scale(scaler, now + 61 * 1000);
+        assertEquals(3, manager.getActiveWorkers(workerScript).size());
+    }
+
+    @Test
+    public void restoresMinimumWithinRestartBudget() throws InterruptedException {
+        WorkerAutoscaler autoscaler = new WorkerAutoscaler(manager, 0, 10, 1);
+        WorkerAutoscaler.ScriptScaler scaler = new WorkerAutoscaler.ScriptScaler(workerScript, 2, 2);
+
+        autoscaler.scale(scaler, System.currentTimeMillis());
+        assertEquals(2, manager.getActiveWorkers(workerScript).size());
+
+        manager.retireWorker( manager.getActiveWorkers(workerScript).get(0) );
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( manager.workers.size() > 1 && System.currentTimeMillis() < deadline ) {
+            Thread.sleep(20);
+            manager.reapWorkers();
+        }
+        assertEquals(1, manager.getActiveWorkers(workerScript).size());
+
+        autoscaler.scale(scaler, System.currentTimeMillis());
+        assertEquals(1, manager.getActiveWorkers(workerScript).size());
+        assertTrue( workerScript.isRestartsExhausted() );
+    }
+
+}
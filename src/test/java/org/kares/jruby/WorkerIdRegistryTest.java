@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class WorkerIdRegistryTest {
+
+    private final WorkerIdRegistry subject = new WorkerIdRegistry();
+
+    @Test
+    public void registersWorkerIds() {
+        subject.register("host:42[worker#1]:*");
+        subject.register("host:42[worker#2]:*");
+        assertEquals( 2, subject.size() );
+        assertTrue( subject.getWorkerIds().contains("host:42[worker#1]:*") );
+
+        assertTrue( subject.unregister("host:42[worker#1]:*") );
+        assertFalse( subject.unregister("host:42[worker#1]:*") );
+        assertFalse( subject.isRegistered("host:42[worker#1]:*") );
+        assertEquals( 1, subject.size() );
+    }
+
+    @Test
+    public void tellsWhetherWorkerThreadIsAlive() throws InterruptedException {
+        final CountDownLatch registered = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread worker = new Thread("worker#" + subject.nextThreadNumber()) {
+            public void run() {
+                subject.register("host:42[" + getName() + "]:*");
+                registered.countDown();
+                try { done.await(); } catch (InterruptedException e) { /* exit */ }
+            }
+        };
+        worker.start();
+        registered.await();
+
+        assertTrue( subject.isThreadAlive(worker.getName()) );
+        assertTrue( subject.isThreadAlive(Thread.currentThread().getName()) ); // not registered
+        assertFalse( subject.isThreadAlive("worker#666") );
+
+        done.countDown(); worker.join();
+        assertFalse( subject.isThreadAlive(worker.getName()) );
+    }
+
+    @Test
+    public void tellsWhetherThreadIsAliveUsingSnapshot() throws InterruptedException {
+        final Thread thread = new Thread("worker#" + subject.nextThreadNumber());
+        final Set<String> threadNames = subject.getLiveThreadNames();
+        assertTrue( threadNames.contains(Thread.currentThread().getName()) );
+
+        assertTrue( subject.isThreadAlive(Thread.currentThread().getName(), threadNames) );
+        thread.start(); // not in the snapshot
+        assertFalse( subject.isThreadAlive(thread.getName(), threadNames) );
+        thread.join();
+    }
+
+    @Test
+    public void onlyPrunesOncePerInterval() {
+        assertTrue( subject.tryPrune(60 * 1000) );
+        assertFalse( subject.tryPrune(60 * 1000) );
+        assertTrue( subject.tryPrune(0) );
+    }
+
+}
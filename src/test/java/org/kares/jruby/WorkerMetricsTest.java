@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WorkerMetricsTest {
+
+    @Test
+    public void countsJobsFromConcurrentThreads() throws InterruptedException {
+        final WorkerMetrics metrics = new WorkerMetrics();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < 8; i++ ) {
+            threads.add(new Thread() {
+
+                @Override
+                public void run() {
+                    for ( int j = 0; j < 1000; j++ ) metrics.jobCompleted( j % 10 != 0 );
+                }
+
+            });
+        }
+        for ( Thread thread : threads ) thread.start();
+        for ( Thread thread : threads ) thread.join();
+
+        assertEquals( 8000, metrics.getJobsProcessed() );
+        assertEquals( 800, metrics.getJobsFailed() );
+        assertTrue( metrics.getLastJobTime() > 0 );
+    }
+
+    @Test
+    public void ratesAreZeroBeforeFirstTick() {
+        final WorkerMetrics metrics = new WorkerMetrics();
+        metrics.jobCompleted(true);
+        assertEquals( 0.0, metrics.getOneMinuteRate(), 0.0 );
+        assertEquals( 0.0, metrics.getFifteenMinuteRate(), 0.0 );
+    }
+
+    @Test
+    public void stripedCounterSumsThenResets() {
+        final StripedCounter counter = new StripedCounter();
+        counter.add(5); counter.increment();
+        assertEquals( 6, counter.sum() );
+        assertEquals( 6, counter.sumThenReset() );
+        assertEquals( 0, counter.sum() );
+    }
+
+}
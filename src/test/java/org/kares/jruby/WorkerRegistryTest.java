@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author kares <self_AT_kares_DOT_org>
+ */
+public class WorkerRegistryTest {
+
+    private final WorkerRegistry subject = new WorkerRegistry();
+
+    @Test
+    public void registersWorkersWithUniqueIds() {
+        RubyWorker worker1 = new RubyWorker(null, "nil");
+        RubyWorker worker2 = new RubyWorker(null, "nil");
+        Thread thread = new Thread();
+
+        WorkerRegistry.Entry entry1 = subject.register(worker1, thread);
+        WorkerRegistry.Entry entry2 = subject.register(worker2, thread);
+        assertTrue( entry2.getId() > entry1.getId() );
+        assertSame( thread, subject.getThread(worker1) );
+        assertSame( entry2, subject.get(worker2) );
+        assertEquals( WorkerState.STARTING, entry1.getState() );
+        assertTrue( entry1.getRegisteredTime() > 0 );
+        assertEquals( 2, subject.size() );
+
+        try {
+            subject.register(worker1, new Thread());
+            fail("expected to fail registering twice");
+        }
+        catch (IllegalStateException e) {
+            assertSame( thread, subject.getThread(worker1) );
+        }
+    }
+
+    @Test
+    public void onlyOneConcurrentRemovalSucceeds() throws InterruptedException {
+        final RubyWorker worker = new RubyWorker(null, "nil");
+        subject.register(worker, new Thread());
+
+        final AtomicInteger removed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < 8; i++ ) {
+            final boolean all = i % 2 == 0;
+            Thread thread = new Thread() {
+                public void run() {
+                    try { start.await(); } catch (InterruptedException e) { return; }
+                    if ( all ) removed.addAndGet( subject.removeAll().size() );
+                    else if ( subject.remove(worker) != null ) removed.incrementAndGet();
+                }
+            };
+            thread.start(); threads.add(thread);
+        }
+        start.countDown();
+        for ( Thread thread : threads ) thread.join();
+
+        assertEquals( 1, removed.get() );
+        assertTrue( subject.isEmpty() );
+    }
+
+    @Test
+    public void removeAllNeverLosesConcurrentlyRegisteredWorkers() throws InterruptedException {
+        final int count = 2000;
+        final Set<RubyWorker> removed = new HashSet<RubyWorker>();
+        Thread registering = new Thread() {
+            public void run() {
+                for ( int i = 0; i < count; i++ ) subject.register(new RubyWorker(null, "nil"), new Thread());
+            }
+        };
+        registering.start();
+        while ( registering.isAlive() ) {
+            for ( WorkerRegistry.Entry entry : subject.removeAll() ) removed.add(entry.getWorker());
+        }
+        for ( WorkerRegistry.Entry entry : subject.removeAll() ) removed.add(entry.getWorker());
+
+        assertEquals( count, removed.size() );
+        assertTrue( subject.isEmpty() );
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jruby.Ruby;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WorkerRuntimePoolTest {
+
+    private WorkerRuntimePoolImpl subject;
+
+    static class WorkerRuntimePoolImpl extends WorkerRuntimePool {
+
+        final AtomicInteger created = new AtomicInteger(0);
+
+        WorkerRuntimePoolImpl(int minSize, int maxSize, long checkoutTimeout) {
+            super(minSize, maxSize, checkoutTimeout);
+        }
+
+        @Override
+        protected Ruby newRuntime() {
+            created.incrementAndGet();
+            return Ruby.newInstance();
+        }
+
+        @Override
+        protected void log(String message) { /* quiet */ }
+
+    }
+
+    @After
+    public void destroyPool() {
+        if (subject != null) subject.destroy();
+    }
+
+    @Test
+    public void checkoutCreatesRuntimesUpToMaxSize() {
+        subject = new WorkerRuntimePoolImpl(0, 2, 100);
+
+        Ruby runtime1 = subject.checkout();
+        Ruby runtime2 = subject.checkout();
+        assertNotSame(runtime1, runtime2);
+        assertEquals(2, subject.getSize());
+        assertEquals(2, subject.getCheckoutCount());
+
+        try {
+            subject.checkout();
+            fail("expected to time out");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("timed out"));
+        }
+        assertEquals(2, subject.created.get());
+    }
+
+    @Test
+    public void checkinMakesRuntimeAvailableAgain() {
+        subject = new WorkerRuntimePoolImpl(0, 1, 100);
+
+        Ruby runtime = subject.checkout();
+        assertEquals(0, subject.getAvailableSize());
+        subject.checkin(runtime);
+        assertEquals(1, subject.getAvailableSize());
+
+        assertSame(runtime, subject.checkout());
+        assertEquals(1, subject.created.get());
+    }
+
+    @Test
+    public void startBootsMinimumRuntimesInTheBackground() throws InterruptedException {
+        subject = new WorkerRuntimePoolImpl(2, 3, 30 * 1000);
+        subject.start();
+
+        assertNotNull(subject.checkout());
+        assertNotNull(subject.checkout());
+        assertEquals(2, subject.created.get());
+        assertEquals(2, subject.getCheckoutCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void checkoutFailsIfRuntimeCanNotBeBooted() {
+        subject = new WorkerRuntimePoolImpl(0, 1, 100) {
+
+            @Override
+            protected Ruby newRuntime() {
+                throw new UnsupportedOperationException("won't use error application runtime");
+            }
+
+        };
+        try {
+            subject.checkout();
+        }
+        finally {
+            assertEquals(0, subject.getSize());
+        }
+    }
+
+    @Test
+    public void destroysRuntimeBootedAfterDestroy() throws InterruptedException {
+        final CountDownLatch booting = new CountDownLatch(1);
+        final CountDownLatch destroyed = new CountDownLatch(1);
+        final List<Ruby> tornDown = new CopyOnWriteArrayList<Ruby>();
+        subject = new WorkerRuntimePoolImpl(1, 1, 30 * 1000) {
+
+            @Override
+            protected Ruby newRuntime() {
+                booting.countDown();
+                try { destroyed.await(); } catch (InterruptedException e) { /* boot */ }
+                return super.newRuntime();
+            }
+
+            @Override
+            protected void destroyRuntime(Ruby runtime) {
+                tornDown.add(runtime); super.destroyRuntime(runtime);
+            }
+
+        };
+        subject.start();
+        booting.await();
+        subject.destroy();
+        destroyed.countDown();
+
+        final long deadline = System.currentTimeMillis() + 10 * 1000;
+        while ( tornDown.isEmpty() && System.currentTimeMillis() < deadline ) Thread.sleep(10);
+        assertEquals(1, tornDown.size());
+        assertEquals(0, subject.getAvailableSize());
+        try {
+            subject.checkout(); fail("destroyed");
+        }
+        catch (IllegalStateException e) { /* expected */ }
+    }
+
+}
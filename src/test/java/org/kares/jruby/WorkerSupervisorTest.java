@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2012 Karol Bucek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kares.jruby;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WorkerSupervisorTest {
+
+    @Test
+    public void restartDelayGrowsExponentiallyWithJitter() {
+        WorkerSupervisor supervisor = new WorkerSupervisor(null, null, 10, 100, 10000, false);
+        for ( int i = 0; i < 100; i++ ) {
+            long delay = supervisor.nextRestartDelay(0);
+            assertTrue("delay: " + delay, delay >= 50 && delay <= 100);
+            delay = supervisor.nextRestartDelay(3);
+            assertTrue("delay: " + delay, delay >= 400 && delay <= 800);
+        }
+    }
+
+    @Test
+    public void restartDelayIsLimitedByMaxDelay() {
+        WorkerSupervisor supervisor = new WorkerSupervisor(null, null, 10, 100, 1000, false);
+        for ( int i = 0; i < 100; i++ ) {
+            long delay = supervisor.nextRestartDelay(10);
+            assertTrue("delay: " + delay, delay >= 500 && delay <= 1000);
+            delay = supervisor.nextRestartDelay(100);
+            assertTrue("delay: " + delay, delay >= 500 && delay <= 1000);
+        }
+    }
+
+}
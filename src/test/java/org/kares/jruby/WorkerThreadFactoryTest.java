@@ -127,6 +127,20 @@ public class WorkerThreadFactoryTest {
         assertTrue( thread.isDaemon() );
     }
 
+    @Test
+    public void virtualThreadsFallBackToPlatformThreadsIfNotSupported() {
+        WorkerThreadFactory factory = new WorkerThreadFactory("prefix-", 3);
+        factory.setVirtualThreads(true);
+        Thread thread = factory.newThread(DUMMY_RUNNABLE);
+        assertNotNull(thread);
+        assertTrue( thread.isDaemon() );
+        assertFalse( thread.isAlive() );
+        assertTrue( thread.getName().startsWith("prefix-") );
+        if ( ! WorkerThreadFactory.isVirtualThreadSupported() ) {
+            assertEquals(3, thread.getPriority());
+        }
+    }
+
     @Test
     public void newThreadsShouldNotYetBeStarted() {
         WorkerThreadFactory factory = new WorkerThreadFactory("", 1);
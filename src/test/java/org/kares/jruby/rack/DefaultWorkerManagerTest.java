@@ -20,7 +20,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.Map;
 import java.util.concurrent.ThreadFactory;
 
 import javax.servlet.ServletContext;
@@ -31,8 +30,8 @@ import org.jruby.rack.RackApplication;
 import org.jruby.rack.RackApplicationFactory;
 import org.jruby.rack.RackContext;
 
-import org.kares.jruby.RubyWorker;
 import org.kares.jruby.WorkerManager;
+import org.kares.jruby.WorkerRegistry;
 import org.kares.jruby.WorkerThreadFactory;
 
 import org.junit.After;
@@ -66,7 +65,7 @@ public class DefaultWorkerManagerTest {
             this.threadFactory = threadFactory;
         }
 
-        Map<RubyWorker, Thread> getWorkers() {
+        WorkerRegistry getWorkers() {
             return workers;
         }
         
@@ -102,6 +101,21 @@ public class DefaultWorkerManagerTest {
         subject.startup();
     }
     
+    @Test
+    public void parallelStartupStartsNoWorkersWhenRackFactoryThrowsRackException() {
+        MockRackApplicationFactory applicationFactory = newMockRackApplicationFactory( null );
+        applicationFactory.setThrowInitializationException("initialization failed");
+        when( mockServletContext().getAttribute("rack.factory") ).thenReturn( applicationFactory );
+        when( mockServletContext().getInitParameter( "jruby.worker.script" ) ).thenReturn( "nil" );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "3" );
+        when( mockServletContext().getInitParameter( WorkerManager.STARTUP_PARALLEL_KEY ) ).thenReturn( "true" );
+
+        subject.startup();
+
+        assertTrue( subject.getWorkers().isEmpty() );
+        verify( mockServletContext(), times(1) ).log( contains("failed to obtain (Ruby) runtime") );
+    }
+
     @Test
     public void startsUpWithRackFactoryAndWorkerScriptSet() {
         RackApplicationFactory applicationFactory = newMockRackApplicationFactory( null );
@@ -139,6 +153,33 @@ public class DefaultWorkerManagerTest {
         assertSame(runtime, subject.getRuntime());
     }
 
+    @Test
+    public void returnsBorrowedRuntimeToRackFactoryOnRelease() throws Exception {
+        final Ruby runtime = Ruby.newInstance();
+        RackApplication application = newMockRackApplication( runtime );
+        RackApplicationFactory applicationFactory = mock(RackApplicationFactory.class);
+        when( applicationFactory.getApplication() ).thenReturn( application );
+        when( servletContext.getAttribute( "rack.factory" ) ).thenReturn( applicationFactory );
+
+        assertSame(runtime, subject.getRuntime());
+        subject.releaseRuntime(runtime);
+        subject.releaseRuntime(runtime); // only returned once
+
+        verify( applicationFactory, times(1) ).finishedWithApplication( application );
+    }
+
+    @Test
+    public void sizesRuntimePoolFromAllConfiguredWorkers() {
+        RackApplicationFactory applicationFactory = newMockRackApplicationFactory( null );
+        when( servletContext.getAttribute( "rack.factory" ) ).thenReturn( applicationFactory );
+        when( mockServletContext().getInitParameter( "jruby.worker" ) ).thenReturn( "resque,Delayed::Job" );
+        when( mockServletContext().getInitParameter( WorkerManager.THREAD_COUNT_KEY ) ).thenReturn( "2" );
+        when( mockServletContext().getInitParameter( "jruby.worker.resque.thread.count" ) ).thenReturn( "3" );
+
+        assertEquals( 5, subject.getRuntimePool().getMinSize() );
+        assertEquals( 5, subject.getRuntimePool().getMaxSize() );
+    }
+
     @Test
     public void logsWithRackContext() {
         MockRackApplicationFactory applicationFactory = newMockRackApplicationFactory( null );
@@ -167,7 +208,7 @@ public class DefaultWorkerManagerTest {
 
         subject.startup();
 
-        final Thread worker = subject.getWorkers().values().iterator().next();
+        final Thread worker = subject.getWorkers().getThreads().get(0);
         while ( true ) {
             if ( ! worker.isAlive() ) break;
             Thread.yield(); Thread.sleep(100);
@@ -107,6 +107,25 @@ module Delayed
       assert_equal worker.name, worker.to_s
     end
 
+    test "does not dispatch without a worker manager" do
+      assert ! new_worker.dispatch?
+    end
+
+    test "dispatcher name replaces the thread part of the name" do
+      worker = new_worker
+      worker.name_prefix = 'PREFIX '
+      assert_match /^PREFIX host:.*? pid:\d+ dispatcher$/, worker.dispatcher_name
+    end
+
+    test "releases unstarted jobs from the dispatch queue" do
+      job = mock('job'); job.stubs(:id).returns(1)
+      job.expects(:unlock).once; job.expects(:save).once
+      queue = mock('queue')
+      queue.expects(:poll).with(0).twice.returns(job).then.returns(nil)
+
+      Delayed::JRubyWorker.release_jobs(queue)
+    end
+
     test "performs the reserved job on start" do
       worker = new_worker
       worker.stubs(:loop).yields